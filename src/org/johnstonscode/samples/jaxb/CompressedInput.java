@@ -0,0 +1,172 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.xml.sax.InputSource;
+
+/**
+ * This class detects gzip compressed input and wraps it in a streaming
+ * decompressor, so that the SAX parser reads the uncompressed document
+ * directly and all locations refer to the uncompressed XML. Input is
+ * detected by the gzip magic number at the start of the stream, so no
+ * particular file extension or content type is required.
+ * 
+ * Only byte streams can be compressed, an {@link InputSource} that
+ * provides a character stream is returned unchanged. An input source that
+ * only provides a system identifier is opened here, rather than by SAX, 
+ * so that its first bytes can be checked.
+ * 
+ * The magic number is read through a two byte pushback buffer, so the
+ * input is not buffered a second time, and the buffer used to inflate
+ * compressed input is taken from a pool shared by all parsers, in the same
+ * way as {@link PooledOutputStream}, and returned when the stream is
+ * closed.
+ *
+ */
+final class CompressedInput {
+    
+    /*
+     * The size of the pooled buffers used to inflate the input.
+     */
+    static final int BUFFER_SIZE = 16 * 1024;
+    /*
+     * The maximum number of idle buffers kept in the pool.
+     */
+    private static final int MAX_POOLED = 16;
+    /*
+     * The first two bytes of any gzip stream.
+     */
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    
+    private CompressedInput() {
+        // Not to be instantiated.
+    }
+    
+    /**
+     * Return an input source that will read the uncompressed document. If 
+     * the result is not the same object as the input the caller must close
+     * its byte stream once parsing is complete, to release the stream and
+     * the native resources of the decompressor.
+     * 
+     * @param input the input source provided by the client
+     * @return an input source for the uncompressed document
+     * @throws IOException if the input could not be opened or read
+     */
+    static InputSource open(final InputSource input) throws IOException {
+        if (input.getCharacterStream() != null) {
+            return input;
+        }
+        InputStream stream = input.getByteStream();
+        if (stream == null) {
+            if (input.getSystemId() == null) {
+                return input;
+            }
+            stream = openSystemId(input.getSystemId());
+        }
+        final PushbackInputStream pushback = new PushbackInputStream(stream, 2);
+        stream = pushback;
+        try {
+            if (isGzip(pushback)) {
+                stream = new PooledGZIPInputStream(pushback);
+            }
+        } catch (IOException ex) {
+            stream.close();
+            throw ex;
+        }
+        final InputSource actualInput = new InputSource(stream);
+        actualInput.setSystemId(input.getSystemId());
+        actualInput.setPublicId(input.getPublicId());
+        actualInput.setEncoding(input.getEncoding());
+        return actualInput;
+    }
+    
+    /*
+     * Check for the gzip magic number, pushing back the bytes read so the
+     * stream is left where it was.
+     */
+    private static boolean isGzip(final PushbackInputStream stream) throws IOException {
+        final byte[] magic = new byte[2];
+        int count = 0;
+        while (count < magic.length) {
+            final int read = stream.read(magic, count, magic.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        stream.unread(magic, 0, count);
+        return count == magic.length 
+            && (magic[0] & 0xff) == GZIP_MAGIC_1 && (magic[1] & 0xff) == GZIP_MAGIC_2;
+    }
+    
+    /*
+     * Open a system identifier the way SAX would, as a URL or failing that
+     * as a file name.
+     */
+    private static InputStream openSystemId(final String systemId) throws IOException {
+        try {
+            return new URL(systemId).openStream();
+        } catch (MalformedURLException ex) {
+            return new FileInputStream(systemId);
+        }
+    }
+    
+    private static byte[] acquire() {
+        final byte[] pooled = POOL.poll();
+        if (pooled == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        POOLED.decrementAndGet();
+        return pooled;
+    }
+    
+    private static void recycle(final byte[] released) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(released);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+    
+    /*
+     * A gzip stream that inflates through a pooled buffer. The superclass
+     * only reads the header in its constructor, which does not use the 
+     * buffer, so its own (minimal) buffer is replaced before any data is
+     * read.
+     */
+    private static final class PooledGZIPInputStream extends GZIPInputStream {
+        
+        PooledGZIPInputStream(final InputStream input) throws IOException {
+            super(input, 1);
+            this.buf = acquire();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (this.buf != null) {
+                    recycle(this.buf);
+                    this.buf = null;
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package org.johnstonscode.samples.jaxb;
 
-import java.util.Map;
-
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.UnmarshallerHandler;
 import javax.xml.bind.Unmarshaller.Listener;
@@ -16,10 +14,13 @@ import org.xml.sax.SAXException;
  * (a specialization of the SAX {@link ContentHandler} interface) as well
  * as the {@link Listener} interface. Together the event handlers
  * {@link UnmarshallerHandler#setDocumentLocator(Locator)} and
- * {@link Listener#beforeUnmarshal(Object, Object)} allow us to build a
- * map from Object (the unmarshalled object) to a location object that
- * tracks the line number and column number where the XML element 
- * started.
+ * {@link Listener#beforeUnmarshal(Object, Object)} allow us to record,
+ * in a {@link LocationStore}, a mapping from Object (the unmarshalled
+ * object) to a location object that tracks the line number and column 
+ * number where the XML element started.
+ * 
+ * Optionally a {@link RootElementFilter} may be provided which will
+ * be called for the root element before JAX-B sees it.
  *
  */
 class DelegatingHandlerImpl extends Listener implements UnmarshallerHandler {
@@ -32,13 +33,26 @@ class DelegatingHandlerImpl extends Listener implements UnmarshallerHandler {
      */
     private Locator locator;
     /*
-     * The map we build and return to clients.
+     * The store we record locations into for clients.
+     */
+    private final LocationStore locationStore;
+    /*
+     * The filter, if any, to call for the root element.
+     */
+    private final RootElementFilter rootElementFilter;
+    /*
+     * Set once the root element has been seen.
      */
-    private final Map<Object, LocationImpl> locationMap;
+    private boolean seenRootElement;
+    
+    public DelegatingHandlerImpl(final UnmarshallerHandler unmarshallerHandler, final LocationStore locationStore) {
+        this(unmarshallerHandler, locationStore, null);
+    }
     
-    public DelegatingHandlerImpl(final UnmarshallerHandler unmarshallerHandler, final Map<Object, LocationImpl> locationMap) {
+    public DelegatingHandlerImpl(final UnmarshallerHandler unmarshallerHandler, final LocationStore locationStore, final RootElementFilter rootElementFilter) {
         this.unmarshallerHandler = unmarshallerHandler;
-        this.locationMap = locationMap;
+        this.locationStore = locationStore;
+        this.rootElementFilter = rootElementFilter;
     }
 
     /**
@@ -48,11 +62,11 @@ class DelegatingHandlerImpl extends Listener implements UnmarshallerHandler {
     public void beforeUnmarshal(Object target, Object parent) {
         super.beforeUnmarshal(target, parent);
         /*
-         * Add this object to the location map using the 
+         * Add this object to the location store using the 
          * locator set by SAX.
          */
         if (target != null && this.locator != null) {
-            this.locationMap.put(target, new LocationImpl(this.locator.getLineNumber(), this.locator.getColumnNumber()));
+            this.locationStore.setLocation(target, this.locator.getLineNumber(), this.locator.getColumnNumber());
         }
     }
 
@@ -140,6 +154,12 @@ class DelegatingHandlerImpl extends Listener implements UnmarshallerHandler {
     @Override
     public void startElement(String uri, String localName, String qName,
             Attributes atts) throws SAXException {
+        if (!this.seenRootElement) {
+            this.seenRootElement = true;
+            if (this.rootElementFilter != null) {
+                this.rootElementFilter.rootElement(uri, localName, this.locator);
+            }
+        }
         this.unmarshallerHandler.startElement(uri, localName, qName, atts);
     }
 
@@ -0,0 +1,21 @@
+package org.johnstonscode.samples.jaxb;
+
+/**
+ * This is a simple interface that returns a key from an object, used to
+ * build the indexes in a {@link RuleContext}. As indexes are cached by key
+ * function rules that share an instance will also share an index.
+ * 
+ * @author simonjo
+ *
+ * @param <T> the type of the objects to be indexed
+ */
+public interface KeyFunction<T> {
+
+    /**
+     * Return the key for the given object.
+     * 
+     * @param object the object to return a key for
+     * @return the key, or <code>null</code> if the object has no key
+     */
+    String getKey(T object);
+}
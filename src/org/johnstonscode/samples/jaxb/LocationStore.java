@@ -0,0 +1,50 @@
+package org.johnstonscode.samples.jaxb;
+
+/**
+ * This is the interface used to record and retrieve the location of
+ * unmarshalled objects. By default {@link ReportingParser} records locations
+ * into the map returned by {@link ReportingParser#getLocationMap()}, a client
+ * may provide an alternative store with different memory characteristics
+ * using {@link ReportingParser#setLocationStore(LocationStore)}.
+ * 
+ * Implementations should compare objects by identity, not by 
+ * <code>equals</code>, as two distinct unmarshalled objects may well be 
+ * equal but will have been found at different locations. Note that the
+ * default store, which records into the parser's location map, does not;
+ * it inherits the <code>equals</code> comparison of that map.
+ * 
+ * @author simonjo
+ *
+ */
+public interface LocationStore {
+
+    /**
+     * Record the location of the start element for the given object.
+     * 
+     * @param object the unmarshalled object
+     * @param line the line number (1-based) of the start element
+     * @param column the column number (1-based) of the start element
+     */
+    void setLocation(Object object, int line, int column);
+    
+    /**
+     * Return the location recorded for the given object.
+     * 
+     * @param object the unmarshalled object
+     * @return the location of the start element, or <code>null</code> if
+     *     the object has no location recorded
+     */
+    Location getLocation(Object object);
+    
+    /**
+     * Return the number of locations currently held by the store.
+     * 
+     * @return the number of locations in the store
+     */
+    int size();
+    
+    /**
+     * Remove all locations from the store.
+     */
+    void clear();
+}
@@ -0,0 +1,51 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.util.Map;
+
+/**
+ * This is the default {@link LocationStore}, which simply records locations
+ * into a map provided by the parser. Note that whether objects are compared
+ * by identity, as {@link LocationStore} recommends, depends on the map 
+ * provided; the parser's own location map compares with <code>equals</code>.
+ *
+ */
+class MapLocationStore implements LocationStore {
+    
+    private final Map<Object, LocationImpl> locationMap;
+    
+    public MapLocationStore(final Map<Object, LocationImpl> locationMap) {
+        this.locationMap = locationMap;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLocation(final Object object, final int line, final int column) {
+        this.locationMap.put(object, new LocationImpl(line, column));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Location getLocation(final Object object) {
+        return this.locationMap.get(object);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.locationMap.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.locationMap.clear();
+    }
+}
@@ -0,0 +1,345 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAnyElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+import org.w3c.dom.Node;
+
+/**
+ * This class walks an unmarshalled object graph once, recording every
+ * model object in document order, and by class, so that rules can find
+ * the objects they are interested in without walking the graph themselves.
+ * Key indexes are then built on demand from the recorded objects, once for
+ * each class and key function, and shared by all rules.
+ * 
+ * Model objects are found by following only the properties JAX-B binds,
+ * according to the {@link XmlAccessType} of each class: fields for
+ * <code>FIELD</code> access, getter and setter pairs for 
+ * <code>PROPERTY</code> access, public members for the default
+ * <code>PUBLIC_MEMBER</code> access, and annotated fields or getters in all
+ * cases. Other getters are never called. Values from the Java platform
+ * (strings, numbers, dates and so on), enumerations and DOM nodes are 
+ * leaves and not recorded, and wildcard (<code>@XmlAnyElement</code>)
+ * content is only followed for known root elements; collections, maps,
+ * arrays and {@link JAXBElement}s are followed to their contents. Objects
+ * are only visited once, so cycles (for example from <code>@XmlIDREF</code>
+ * properties) are safe.
+ * 
+ * The bound properties of each class are found by reflection and cached
+ * in a map given by the owner of the index, normally a {@link RuleEngine},
+ * so the model classes (and their class loader) are only reachable while
+ * the owner is.
+ * 
+ * Once constructed the index is safe for concurrent use.
+ *
+ */
+class ObjectGraphIndex {
+    
+    private final Object root;
+    /*
+     * The bound properties for each model class, shared with other indexes
+     * with the same owner.
+     */
+    private final ConcurrentMap<Class<?>, List<BoundProperty>> properties;
+    /*
+     * All model objects found, in the order they were found.
+     */
+    private final List<Object> objects;
+    /*
+     * All model objects found, by their actual class.
+     */
+    private final Map<Class<?>, List<Object>> objectsByClass;
+    /*
+     * The key indexes built so far, by key function and then class.
+     */
+    private final ConcurrentMap<KeyFunction<?>, ConcurrentMap<Class<?>, Map<String, List<Object>>>> indexes;
+    
+    public ObjectGraphIndex(final Object root) {
+        this(root, new ConcurrentHashMap<Class<?>, List<BoundProperty>>());
+    }
+    
+    public ObjectGraphIndex(final Object root, final ConcurrentMap<Class<?>, List<BoundProperty>> properties) {
+        this.root = root;
+        this.properties = properties;
+        this.objects = new ArrayList<Object>();
+        this.objectsByClass = new LinkedHashMap<Class<?>, List<Object>>();
+        this.indexes = new ConcurrentHashMap<KeyFunction<?>, ConcurrentMap<Class<?>, Map<String, List<Object>>>>();
+        walk(root);
+    }
+    
+    public Object getRoot() {
+        return this.root;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getObjects(final Class<T> classOfT) {
+        List<Object> matched = null;
+        for (final Map.Entry<Class<?>, List<Object>> entry : this.objectsByClass.entrySet()) {
+            if (classOfT.isAssignableFrom(entry.getKey())) {
+                if (matched != null) {
+                    // Objects of several classes, keep them in document order
+                    matched = this.objects;
+                    break;
+                }
+                matched = entry.getValue();
+            }
+        }
+        final List<T> objects = new ArrayList<T>();
+        if (matched == this.objects) {
+            for (final Object object : this.objects) {
+                if (classOfT.isInstance(object)) {
+                    objects.add((T)object);
+                }
+            }
+        } else if (matched != null) {
+            objects.addAll((List<T>)matched);
+        }
+        return objects;
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <T> Map<String, List<T>> getIndex(final Class<T> classOfT, final KeyFunction<? super T> keyFunction) {
+        ConcurrentMap<Class<?>, Map<String, List<Object>>> byClass = this.indexes.get(keyFunction);
+        if (byClass == null) {
+            byClass = new ConcurrentHashMap<Class<?>, Map<String, List<Object>>>();
+            final ConcurrentMap<Class<?>, Map<String, List<Object>>> existing = this.indexes.putIfAbsent(keyFunction, byClass);
+            if (existing != null) {
+                byClass = existing;
+            }
+        }
+        Map<String, List<Object>> index = byClass.get(classOfT);
+        if (index == null) {
+            /*
+             * Two rules may build the same index at once, this is harmless
+             * as only one will be kept.
+             */
+            final Map<String, List<T>> built = new HashMap<String, List<T>>();
+            for (final T object : getObjects(classOfT)) {
+                final String key = keyFunction.getKey(object);
+                if (key != null) {
+                    List<T> objects = built.get(key);
+                    if (objects == null) {
+                        objects = new ArrayList<T>(1);
+                        built.put(key, objects);
+                    }
+                    objects.add(object);
+                }
+            }
+            index = Collections.unmodifiableMap((Map)built);
+            final Map<String, List<Object>> existing = byClass.putIfAbsent(classOfT, index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+        return (Map)index;
+    }
+    
+    /*
+     * Walk the graph from the root, without recursion so that very deep
+     * documents cannot overflow the stack.
+     */
+    private void walk(final Object start) {
+        final Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        final LinkedList<Object> pending = new LinkedList<Object>();
+        pending.add(start);
+        while (!pending.isEmpty()) {
+            final Object value = pending.removeFirst();
+            if (value == null) {
+                continue;
+            } else if (value instanceof JAXBElement<?>) {
+                pending.addFirst(((JAXBElement<?>)value).getValue());
+            } else if (value instanceof Collection<?>) {
+                pending.addAll(0, (Collection<?>)value);
+            } else if (value instanceof Map<?, ?>) {
+                pending.addAll(0, ((Map<?, ?>)value).values());
+            } else if (value.getClass().isArray()) {
+                if (!value.getClass().getComponentType().isPrimitive()) {
+                    final int length = Array.getLength(value);
+                    for (int i = length - 1; i >= 0; i--) {
+                        pending.addFirst(Array.get(value, i));
+                    }
+                }
+            } else if (isModelClass(value.getClass()) && visited.put(value, value) == null) {
+                record(value);
+                final List<Object> children = new ArrayList<Object>();
+                for (final BoundProperty property : propertiesFor(value.getClass())) {
+                    if (property.anyContent) {
+                        addAnyContent(property.read(value), children);
+                    } else {
+                        children.add(property.read(value));
+                    }
+                }
+                pending.addAll(0, children);
+            }
+        }
+    }
+    
+    private void record(final Object object) {
+        this.objects.add(object);
+        List<Object> objects = this.objectsByClass.get(object.getClass());
+        if (objects == null) {
+            objects = new ArrayList<Object>();
+            this.objectsByClass.put(object.getClass(), objects);
+        }
+        objects.add(object);
+    }
+    
+    /*
+     * Wildcard content is mostly DOM, only follow the values JAX-B itself
+     * would have unmarshalled, that is known root elements.
+     */
+    private static void addAnyContent(final Object value, final List<Object> children) {
+        if (value instanceof Collection<?>) {
+            for (final Object item : (Collection<?>)value) {
+                addAnyContent(item, children);
+            }
+        } else if (value instanceof JAXBElement<?> 
+                || (value != null && value.getClass().isAnnotationPresent(XmlRootElement.class))) {
+            children.add(value);
+        }
+    }
+    
+    /*
+     * Only classes reached through a bound property are considered, this
+     * excludes the platform, DOM nodes (from mixed or wildcard content) and
+     * enumerations, which are simple values.
+     */
+    private static boolean isModelClass(final Class<?> type) {
+        final String name = type.getName();
+        return !(type.isPrimitive() || type.isEnum() || Node.class.isAssignableFrom(type)
+                || name.startsWith("java.") || name.startsWith("javax."));
+    }
+    
+    /*
+     * Return the properties JAX-B binds for a model class, following the
+     * access type rules of the class and each of its superclasses.
+     */
+    private List<BoundProperty> propertiesFor(final Class<?> type) {
+        List<BoundProperty> properties = this.properties.get(type);
+        if (properties != null) {
+            return properties;
+        }
+        properties = new ArrayList<BoundProperty>();
+        for (Class<?> current = type; current != null && isModelClass(current); current = current.getSuperclass()) {
+            final XmlAccessType accessType = accessTypeFor(current);
+            for (final Field field : current.getDeclaredFields()) {
+                final int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || field.isAnnotationPresent(XmlTransient.class)) {
+                    continue;
+                }
+                if (hasBindingAnnotation(field)
+                        || (accessType == XmlAccessType.FIELD && !Modifier.isTransient(modifiers))
+                        || (accessType == XmlAccessType.PUBLIC_MEMBER && Modifier.isPublic(modifiers))) {
+                    field.setAccessible(true);
+                    properties.add(new BoundProperty(field));
+                }
+            }
+            for (final Method method : current.getDeclaredMethods()) {
+                if (!isGetter(method) || method.isAnnotationPresent(XmlTransient.class)) {
+                    continue;
+                }
+                if (hasBindingAnnotation(method)
+                        || ((accessType == XmlAccessType.PROPERTY 
+                            || (accessType == XmlAccessType.PUBLIC_MEMBER && Modifier.isPublic(method.getModifiers())))
+                            && hasSetter(current, method))) {
+                    method.setAccessible(true);
+                    properties.add(new BoundProperty(method));
+                }
+            }
+        }
+        properties = Collections.unmodifiableList(properties);
+        final List<BoundProperty> existing = this.properties.putIfAbsent(type, properties);
+        return existing == null ? properties : existing;
+    }
+    
+    private static XmlAccessType accessTypeFor(final Class<?> type) {
+        XmlAccessorType accessorType = type.getAnnotation(XmlAccessorType.class);
+        if (accessorType == null && type.getPackage() != null) {
+            accessorType = type.getPackage().getAnnotation(XmlAccessorType.class);
+        }
+        return accessorType == null ? XmlAccessType.PUBLIC_MEMBER : accessorType.value();
+    }
+    
+    private static boolean isGetter(final Method method) {
+        final String name = method.getName();
+        return !Modifier.isStatic(method.getModifiers()) 
+            && method.getParameterTypes().length == 0
+            && method.getReturnType() != void.class
+            && ((name.startsWith("get") && name.length() > 3) 
+                    || (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class));
+    }
+    
+    private static boolean hasSetter(final Class<?> type, final Method getter) {
+        final String name = "set" + getter.getName().substring(getter.getName().startsWith("is") ? 2 : 3);
+        for (final Method method : type.getDeclaredMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == 1
+                    && method.getParameterTypes()[0].isAssignableFrom(getter.getReturnType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean hasBindingAnnotation(final AnnotatedElement element) {
+        for (final Annotation annotation : element.getAnnotations()) {
+            if (annotation.annotationType().getName().startsWith("javax.xml.bind.annotation.")
+                    && !(annotation instanceof XmlTransient)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /*
+     * A field or getter bound by JAX-B, and whether it holds wildcard 
+     * (<code>@XmlAnyElement</code>) content.
+     */
+    static final class BoundProperty {
+        
+        private final AccessibleObject accessor;
+        private final boolean anyContent;
+        
+        BoundProperty(final AccessibleObject accessor) {
+            this.accessor = accessor;
+            this.anyContent = accessor.isAnnotationPresent(XmlAnyElement.class);
+        }
+        
+        Object read(final Object object) {
+            try {
+                if (this.accessor instanceof Method) {
+                    return ((Method)this.accessor).invoke(object);
+                }
+                return ((Field)this.accessor).get(object);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("Cannot read " + ((Member)this.accessor).getName() + " of " + object.getClass().getName(), ex);
+            } catch (InvocationTargetException ex) {
+                throw new IllegalStateException("Cannot read " + ((Member)this.accessor).getName() + " of " + object.getClass().getName(), ex.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.johnstonscode.samples.jaxb;
+
+/**
+ * This is a {@link ValidationError} that may also identify the object the
+ * error relates to. Errors reported by {@link ReportingMarshaller} record
+ * the object being written, and errors reported by {@link ValidationRule}s
+ * record the object that failed the rule. All errors returned by this
+ * library implement this interface, so a client may safely cast to it.
+ * 
+ * @author simonjo
+ *
+ */
+public interface ObjectValidationError extends ValidationError {
+
+    /**
+     * Return the object, if known, this particular error relates to; for
+     * errors reported while marshalling this is the object being written.
+     * 
+     * @return the object, or <code>null</code>, this error relates to
+     */
+    Object getObject();
+}
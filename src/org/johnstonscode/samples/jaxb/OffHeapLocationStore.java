@@ -0,0 +1,264 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is a {@link LocationStore} for very large documents, where the
+ * location data itself would use a significant part of the heap. The line
+ * and column of each object is written as a fixed size record into either
+ * direct (off-heap) memory, or a memory-mapped temporary file, allocated in
+ * chunks as the document is parsed. On the heap each object costs only a
+ * slot in an identity hash table, mapping the object to the sequence number
+ * of its record; a slot is one reference and one <code>int</code>, and the
+ * table is kept between 3/8 and 3/4 full, so each object costs roughly 11
+ * to 21 bytes of heap with compressed references (16 to 32 without),
+ * compared to a <code>LocationImpl</code> and a map entry for the default
+ * location map.
+ *
+ * A {@link Location} is only created when {@link #getLocation(Object)} is
+ * called, and is not retained by the store.
+ *
+ * The store should be closed when the locations are no longer required,
+ * this drops all references to the off-heap memory and deletes any
+ * temporary file. Note that the memory itself is returned when the JVM
+ * collects the buffers, there is no portable way to free it sooner. Once
+ * closed the store is empty and cannot be used again.
+ *
+ * Unlike {@link WeakLocationStore} this store is not safe for concurrent
+ * use, and like the default location map it holds strong references to
+ * the parsed objects until it is cleared or closed.
+ *
+ * @author simonjo
+ *
+ */
+public class OffHeapLocationStore implements LocationStore, Closeable {
+
+    /*
+     * The size in bytes of a record, a line number and a column number.
+     */
+    private static final int RECORD_SIZE = 8;
+    /*
+     * The number of records in each chunk of memory.
+     */
+    private static final int CHUNK_RECORDS = 1 << 16;
+    /*
+     * The size in bytes of each chunk of memory.
+     */
+    private static final int CHUNK_SIZE = RECORD_SIZE * CHUNK_RECORDS;
+    /*
+     * The initial capacity of the index, must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /*
+     * The chunks of memory holding the location records.
+     */
+    private final List<ByteBuffer> chunks;
+    /*
+     * The temporary file, if any, the chunks are mapped from.
+     */
+    private File file;
+    /*
+     * The channel for the temporary file, if any.
+     */
+    private RandomAccessFile fileAccess;
+    /*
+     * The identity hash table of objects, using linear probing.
+     */
+    private Object[] keys;
+    /*
+     * The sequence number of the record for the object in the same slot.
+     */
+    private int[] sequences;
+    /*
+     * The number of records written, also the next sequence number.
+     */
+    private int count;
+    /*
+     * Set once the store has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Construct a new store that keeps location records in direct memory.
+     */
+    public OffHeapLocationStore() {
+        this.chunks = new ArrayList<ByteBuffer>();
+        this.keys = new Object[INITIAL_CAPACITY];
+        this.sequences = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Construct a new store that keeps location records in a memory-mapped
+     * temporary file in the given directory.
+     *
+     * @param directory the directory to create the file in, or <code>null</code>
+     *     for the default temporary directory
+     * @throws IOException if the temporary file could not be created
+     */
+    public OffHeapLocationStore(final File directory) throws IOException {
+        this();
+        this.file = File.createTempFile("locations", ".dat", directory);
+        this.file.deleteOnExit();
+        this.fileAccess = new RandomAccessFile(this.file, "rw");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLocation(final Object object, final int line, final int column) {
+        checkOpen();
+        int slot = slotFor(object);
+        if (this.keys[slot] == null) {
+            if (4 * (this.count + 1) > 3 * this.keys.length) {
+                resize();
+                slot = slotFor(object);
+            }
+            this.keys[slot] = object;
+            this.sequences[slot] = this.count++;
+        }
+        final int sequence = this.sequences[slot];
+        final ByteBuffer chunk = chunkFor(sequence);
+        final int position = (sequence % CHUNK_RECORDS) * RECORD_SIZE;
+        chunk.putInt(position, line);
+        chunk.putInt(position + 4, column);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Location getLocation(final Object object) {
+        if (object == null || this.closed) {
+            return null;
+        }
+        final int slot = slotFor(object);
+        if (this.keys[slot] == null) {
+            return null;
+        }
+        final int sequence = this.sequences[slot];
+        final ByteBuffer chunk = this.chunks.get(sequence / CHUNK_RECORDS);
+        final int position = (sequence % CHUNK_RECORDS) * RECORD_SIZE;
+        return new LocationImpl(chunk.getInt(position), chunk.getInt(position + 4));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The off-heap memory already allocated is kept, and reused for
+     * subsequent locations.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.keys, null);
+        this.count = 0;
+    }
+
+    /**
+     * Release the off-heap memory and delete the temporary file, if any.
+     * Closing a store that is already closed has no effect.
+     *
+     * Deleting the temporary file may fail, silently, while its chunks are
+     * still mapped; on some platforms (notably Windows) a mapped file cannot
+     * be deleted until the buffers have been collected. The file is also
+     * marked to be deleted when the JVM exits.
+     *
+     * @throws IOException if the temporary file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.chunks.clear();
+        this.keys = new Object[0];
+        this.sequences = new int[0];
+        this.count = 0;
+        if (this.fileAccess != null) {
+            try {
+                this.fileAccess.close();
+            } finally {
+                this.fileAccess = null;
+                // may fail while chunks are still mapped, see above.
+                this.file.delete();
+            }
+        }
+    }
+
+    /*
+     * Return the slot in the index that holds the object, or the empty
+     * slot where it should be added.
+     */
+    private int slotFor(final Object object) {
+        final int mask = this.keys.length - 1;
+        int slot = System.identityHashCode(object) & mask;
+        while (this.keys[slot] != null && this.keys[slot] != object) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /*
+     * Double the size of the index, rehashing all objects.
+     */
+    private void resize() {
+        final Object[] oldKeys = this.keys;
+        final int[] oldSequences = this.sequences;
+        this.keys = new Object[oldKeys.length * 2];
+        this.sequences = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                final int slot = slotFor(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.sequences[slot] = oldSequences[i];
+            }
+        }
+    }
+
+    /*
+     * Return the chunk holding the given record, allocating it if required.
+     */
+    private ByteBuffer chunkFor(final int sequence) {
+        final int index = sequence / CHUNK_RECORDS;
+        while (this.chunks.size() <= index) {
+            if (this.fileAccess == null) {
+                this.chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+            } else {
+                try {
+                    this.chunks.add(this.fileAccess.getChannel().map(
+                            FileChannel.MapMode.READ_WRITE, (long)this.chunks.size() * CHUNK_SIZE, CHUNK_SIZE));
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Could not map location file " + this.file, ex);
+                }
+            }
+        }
+        return this.chunks.get(index);
+    }
+
+    /*
+     * Ensure the store has not been closed.
+     */
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("Location store has been closed");
+        }
+    }
+}
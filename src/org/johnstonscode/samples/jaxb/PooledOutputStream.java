@@ -0,0 +1,170 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a buffered {@link OutputStream} that writes to either
+ * another stream or to a {@link WritableByteChannel}, taking its buffer
+ * from a pool shared by all instances, so that repeatedly marshalling
+ * large documents does not allocate a new buffer each time. The buffer is
+ * returned to the pool on {@link #close()}, which flushes but does
+ * <em>not</em> close the underlying stream or channel; that remains the
+ * responsibility of the caller. After a write error {@link #release()}
+ * returns the buffer without flushing.
+ *
+ * As with {@link java.nio.channels.Channels#newOutputStream}, a selectable
+ * channel must be in blocking mode, otherwise a write could spin while the
+ * channel is not ready.
+ *
+ */
+class PooledOutputStream extends OutputStream {
+    
+    /*
+     * The size of each pooled buffer.
+     */
+    static final int BUFFER_SIZE = 16 * 1024;
+    /*
+     * The maximum number of idle buffers kept in the pool.
+     */
+    private static final int MAX_POOLED = 16;
+    
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    
+    private final OutputStream output;
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer;
+    
+    public PooledOutputStream(final OutputStream output) {
+        this.output = output;
+        this.channel = null;
+        this.buffer = acquire();
+    }
+    
+    public PooledOutputStream(final WritableByteChannel channel) {
+        if (channel instanceof SelectableChannel && !((SelectableChannel)channel).isBlocking()) {
+            throw new IllegalBlockingModeException();
+        }
+        this.output = null;
+        this.channel = channel;
+        this.buffer = acquire();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        checkOpen();
+        if (!this.buffer.hasRemaining()) {
+            drain();
+        }
+        this.buffer.put((byte)b);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        checkOpen();
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            if (!this.buffer.hasRemaining()) {
+                drain();
+            }
+            final int count = Math.min(remaining, this.buffer.remaining());
+            this.buffer.put(b, offset, count);
+            offset += count;
+            remaining -= count;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        drain();
+        if (this.output != null) {
+            this.output.flush();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.buffer == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            release();
+        }
+    }
+    
+    /**
+     * Return the buffer to the pool <em>without</em> flushing it, for use
+     * when the underlying stream or channel has already failed and a flush
+     * would only throw again. Any buffered output is discarded, and the
+     * stream is closed.
+     */
+    void release() {
+        if (this.buffer != null) {
+            recycle(this.buffer);
+            this.buffer = null;
+        }
+    }
+    
+    /*
+     * Write the contents of the buffer to the stream or channel.
+     */
+    private void drain() throws IOException {
+        this.buffer.flip();
+        if (this.channel != null) {
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+        } else if (this.buffer.hasRemaining()) {
+            this.output.write(this.buffer.array(), this.buffer.arrayOffset(), this.buffer.remaining());
+        }
+        this.buffer.clear();
+    }
+    
+    private void checkOpen() throws IOException {
+        if (this.buffer == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+    
+    private static ByteBuffer acquire() {
+        final ByteBuffer pooled = POOL.poll();
+        if (pooled == null) {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        POOLED.decrementAndGet();
+        return pooled;
+    }
+    
+    private static void recycle(final ByteBuffer released) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            released.clear();
+            POOL.offer(released);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+}
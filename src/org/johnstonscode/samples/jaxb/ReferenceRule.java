@@ -0,0 +1,74 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.util.Map;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+
+/**
+ * This rule checks that every reference from an object of one class
+ * resolves to the key of an object of another class, reporting an error at
+ * the location of each dangling reference. Objects with a <code>null</code>
+ * reference are not checked. The target objects are found by key index,
+ * so the check is linear in the number of objects.
+ * 
+ * @author simonjo
+ *
+ * @param <S> the type of the objects holding the references
+ * @param <T> the type of the objects referred to
+ */
+public class ReferenceRule<S, T> implements ValidationRule {
+
+    private final Class<S> classOfS;
+    private final KeyFunction<? super S> referenceFunction;
+    private final Class<T> classOfT;
+    private final KeyFunction<? super T> keyFunction;
+    private final Severity severity;
+    
+    /**
+     * Construct a new rule that reports dangling references as errors.
+     * 
+     * @param classOfS the class of the objects holding the references
+     * @param referenceFunction the function returning the reference from each object
+     * @param classOfT the class of the objects referred to
+     * @param keyFunction the function returning the key of each object referred to
+     */
+    public ReferenceRule(final Class<S> classOfS, final KeyFunction<? super S> referenceFunction,
+            final Class<T> classOfT, final KeyFunction<? super T> keyFunction) {
+        this(classOfS, referenceFunction, classOfT, keyFunction, Severity.ERROR);
+    }
+    
+    /**
+     * Construct a new rule.
+     * 
+     * @param classOfS the class of the objects holding the references
+     * @param referenceFunction the function returning the reference from each object
+     * @param classOfT the class of the objects referred to
+     * @param keyFunction the function returning the key of each object referred to
+     * @param severity the severity to report dangling references with
+     */
+    public ReferenceRule(final Class<S> classOfS, final KeyFunction<? super S> referenceFunction,
+            final Class<T> classOfT, final KeyFunction<? super T> keyFunction, final Severity severity) {
+        this.classOfS = classOfS;
+        this.referenceFunction = referenceFunction;
+        this.classOfT = classOfT;
+        this.keyFunction = keyFunction;
+        this.severity = severity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void validate(final RuleContext context) {
+        final Map<String, ?> targets = context.getIndex(this.classOfT, this.keyFunction);
+        for (final S source : context.getObjects(this.classOfS)) {
+            final String reference = this.referenceFunction.getKey(source);
+            if (reference != null && !targets.containsKey(reference)) {
+                context.report(this.severity, String.format(
+                        "%s refers to unknown %s '%s'", 
+                        this.classOfS.getSimpleName(), this.classOfT.getSimpleName(), reference), 
+                        source);
+            }
+        }
+    }
+}
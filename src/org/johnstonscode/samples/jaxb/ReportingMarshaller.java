@@ -0,0 +1,198 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.MarshalException;
+import javax.xml.bind.Marshaller;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+import org.xml.sax.SAXException;
+
+/**
+ * This is the write side counterpart to {@link ReportingParser}, a wrapper
+ * around the JAX-B {@link Marshaller} that streams the XML directly to an
+ * {@link OutputStream} or {@link WritableByteChannel} and records any
+ * validation errors rather than failing on the first.
+ *
+ * Output is written through a buffer taken from a shared pool, so large
+ * models are never held in memory as a string or byte array, and the
+ * buffer itself is reused across marshal operations. The stream or channel
+ * is flushed, but not closed, when marshalling completes.
+ *
+ * Validation against an XML Schema is optional, schemas are compiled once
+ * and cached for all marshallers and parsers. As there is no XML location
+ * when writing, each error is an {@link ObjectValidationError} recording
+ * the object being written when the error occurred, see
+ * {@link ObjectValidationError#getObject()}.
+ *
+ * The {@link JAXBContext} is created once when the marshaller is
+ * constructed. As with the parser, instances are not thread safe as they
+ * hold the errors from the last marshal operation.
+ *
+ * @author simonjo
+ *
+ * @param <T> the type of the root element to write
+ *
+ */
+public class ReportingMarshaller<T> {
+
+    /*
+     * The context shared by all marshal operations.
+     */
+    private final JAXBContext context;
+    /*
+     * We use this to gather errors to return to the client.
+     */
+    private List<ValidationError> events;
+    /*
+     * Whether the output should be indented.
+     */
+    private boolean formattedOutput;
+
+    /**
+     * Construct a new marshaller.
+     *
+     * @param classOfT the class of the root element type
+     * @throws JAXBException if a context could not be created for the class
+     */
+    public ReportingMarshaller(final Class<? super T> classOfT) throws JAXBException {
+        this.context = JAXBContext.newInstance(classOfT);
+        this.events = new LinkedList<ValidationError>();
+    }
+
+    /**
+     * Write the given object to the output stream without validation.
+     *
+     * @param root the root object to write
+     * @param output the stream to write to
+     *
+     * @return <code>true</code> if the object was written without errors
+     * @throws IOException implies that the marshaller could not write to the
+     *     output stream
+     */
+    public boolean marshal(final T root, final OutputStream output) throws IOException {
+        return marshal(root, new PooledOutputStream(output), null);
+    }
+
+    /**
+     * Write the given object to the output stream, validating it against
+     * the given schema.
+     *
+     * @param root the root object to write
+     * @param output the stream to write to
+     * @param schemaPath the path to an XML Schema definition to use for validation
+     *
+     * @return <code>true</code> if the object was written without errors
+     * @throws IOException implies that the marshaller could not write to the
+     *     output stream
+     */
+    public boolean marshal(final T root, final OutputStream output, final String schemaPath) throws IOException {
+        return marshal(root, new PooledOutputStream(output), schemaPath);
+    }
+
+    /**
+     * Write the given object to the channel without validation.
+     *
+     * @param root the root object to write
+     * @param output the channel to write to, which must be in blocking mode
+     *
+     * @return <code>true</code> if the object was written without errors
+     * @throws IOException implies that the marshaller could not write to the
+     *     channel
+     * @throws java.nio.channels.IllegalBlockingModeException if the channel
+     *     is selectable and not in blocking mode
+     */
+    public boolean marshal(final T root, final WritableByteChannel output) throws IOException {
+        return marshal(root, new PooledOutputStream(output), null);
+    }
+
+    /**
+     * Write the given object to the channel, validating it against the
+     * given schema.
+     *
+     * @param root the root object to write
+     * @param output the channel to write to, which must be in blocking mode
+     * @param schemaPath the path to an XML Schema definition to use for validation
+     *
+     * @return <code>true</code> if the object was written without errors
+     * @throws IOException implies that the marshaller could not write to the
+     *     channel
+     * @throws java.nio.channels.IllegalBlockingModeException if the channel
+     *     is selectable and not in blocking mode
+     */
+    public boolean marshal(final T root, final WritableByteChannel output, final String schemaPath) throws IOException {
+        return marshal(root, new PooledOutputStream(output), schemaPath);
+    }
+
+    /*
+     * Write to the pooled stream, which is always closed, or released on
+     * an IO error, to return its buffer to the pool.
+     */
+    private boolean marshal(final T root, final PooledOutputStream output, final String schemaPath) throws IOException {
+        this.events = new LinkedList<ValidationError>();
+        try {
+            final Marshaller marshaller = this.context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.valueOf(this.formattedOutput));
+            // Setup schema validation if required
+            if (schemaPath != null) {
+                marshaller.setSchema(SchemaCache.getSchema(schemaPath));
+            }
+            // Now create and add an error handler
+            marshaller.setEventHandler(new ValidationEventHandlerImpl(this.events));
+
+            marshaller.marshal(root, output);
+
+        } catch (MarshalException ex) {
+            if (ex.getLinkedException() instanceof IOException) {
+                // Don't flush a broken stream, it would hide this exception
+                output.release();
+                throw (IOException)ex.getLinkedException();
+            }
+            // otherwise ignore, these are reported in the validation errors.
+            if (this.events.isEmpty()) {
+                this.events.add(new ValidationErrorImpl(Severity.FATAL, "JAX-B marshal exception", ex));
+            }
+        } catch (JAXBException ex) {
+            this.events.add(new ValidationErrorImpl(Severity.FATAL, "JAX-B configuration exception", ex));
+        } catch (SAXException ex) {
+            this.events.add(new ValidationErrorImpl(Severity.FATAL, "Could not load schema " + schemaPath, ex));
+        } finally {
+            output.close();
+        }
+        return this.events.isEmpty();
+    }
+
+    /**
+     * Return the list of errors recorded during the last marshal operation,
+     * this will always return a list, but that list may be empty.
+     *
+     * @return a list of validation errors
+     */
+    public List<ValidationError> getEvents() {
+        return this.events;
+    }
+
+    /**
+     * Return whether the output is indented.
+     *
+     * @return <code>true</code> if the output is indented
+     */
+    public boolean isFormattedOutput() {
+        return this.formattedOutput;
+    }
+
+    /**
+     * Set whether the output should be indented, the default is not to.
+     *
+     * @param formattedOutput <code>true</code> if the output should be indented
+     */
+    public void setFormattedOutput(final boolean formattedOutput) {
+        this.formattedOutput = formattedOutput;
+    }
+}
@@ -8,7 +8,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.UnmarshalException;
@@ -17,15 +16,13 @@ import javax.xml.bind.Unmarshaller.Listener;
 import javax.xml.bind.UnmarshallerHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 
 import org.johnstonscode.samples.jaxb.ValidationError.Severity;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 
 /**
@@ -43,6 +40,9 @@ import org.xml.sax.XMLReader;
  * do what you would expect. However, even if it did we would want to do more 
  * detailed validation, checking cross-references and so on which we can only 
  * do after parsing and after parsing of course we haven't any info any more.
+ * For this reason the location data is kept with the parser, and the 
+ * {@link RuleEngine} may be used after parsing to run such checks and report
+ * them with the location of the offending objects.
  * 
  * To deal with basic JAX-B validation then we implement our own 
  * <code>ValidationEventHandler</code> that simply records all errors into a
@@ -69,6 +69,10 @@ import org.xml.sax.XMLReader;
  * current object being unmarshalled with the location data we can 
  * retrieve from the {@link Locator}.
  * 
+ * Input that is gzip compressed is detected automatically and decompressed
+ * as it is parsed, so there is no need to decompress archived documents
+ * first; the locations reported always refer to the uncompressed XML.
+ * 
  * <h3>Issues</h3>
  * 
  * In the  JavaDoc for the <code>handleEvent</code> method it states that the
@@ -100,6 +104,10 @@ public class ReportingParser<T> {
      * The Map that we use to track the location of objects in the XML.
      */
     private Map<Object, LocationImpl> locationMap;
+    /*
+     * The store, if any, provided by the client to use instead of the map.
+     */
+    private LocationStore locationStore;
     
     /**
      * Construct a new parser.
@@ -181,27 +189,55 @@ public class ReportingParser<T> {
      * @throws IOException implies that the parser could not read from the 
      *     input source 
      */
-    @SuppressWarnings("unchecked")
     public T parse(final InputSource input, final String schemaPath, final Class<? super T> classOfT) throws ParserConfigurationException, IOException {
-        this.result = null;
-        this.events = new LinkedList<ValidationError>();
-        this.locationMap = new HashMap<Object, LocationImpl>();
+        final JAXBContext context;
         try {
-            
             // Standard JAX-B
-            final JAXBContext context = JAXBContext.newInstance(classOfT);
+            context = JAXBContext.newInstance(classOfT);
+        } catch (JAXBException ex) {
+            reset();
+            this.events.add(new ValidationErrorImpl(Severity.FATAL, "JAX-B configuration exception", ex));
+            return this.result;
+        }
+        return parse(input, schemaPath, context, null);
+    }
+    
+    /**
+     * Parse the given input source using an existing JAX-B context, this
+     * allows a context to be created once and shared across many parse
+     * operations. The optional filter is called for the root element before
+     * it is passed to JAX-B and may reject the document by throwing a
+     * {@link SAXParseException}, which is reported as a fatal error at the
+     * location of the root element.
+     * 
+     * @param input the input source to parse
+     * @param schemaPath the path to an XML Schema definition to use for validation
+     * @param context the JAX-B context to unmarshal with
+     * @param rootElementFilter a filter for the root element, or <code>null</code>
+     * 
+     * @return the root object unmarshalled by JAX-B, or <code>null</code> 
+     *     on error.
+     * @throws ParserConfigurationException implies the JAXB configuration is
+     *     not valid
+     * @throws IOException implies that the parser could not read from the 
+     *     input source 
+     */
+    @SuppressWarnings("unchecked")
+    T parse(final InputSource input, final String schemaPath, final JAXBContext context, final RootElementFilter rootElementFilter) throws ParserConfigurationException, IOException {
+        reset();
+        try {
+            
             final Unmarshaller unmarshaller = context.createUnmarshaller();
             // Setup schema validation if required
             if (schemaPath != null) {
-                final SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-                final InputStream schemaIS = ClassLoader.getSystemResourceAsStream(schemaPath);
-                final Schema schema = sf.newSchema(new StreamSource(schemaIS));
-                unmarshaller.setSchema(schema);
+                unmarshaller.setSchema(SchemaCache.getSchema(schemaPath));
             }
             // Now retrieve the SAX handler that JAX-B uses
             final UnmarshallerHandler unmarshallerHandler = unmarshaller.getUnmarshallerHandler();
             // Wrap it in our own handler
-            final DelegatingHandlerImpl actualHandler = new DelegatingHandlerImpl(unmarshallerHandler, this.locationMap);
+            final DelegatingHandlerImpl actualHandler = new DelegatingHandlerImpl(unmarshallerHandler, 
+                    this.locationStore == null ? new MapLocationStore(this.locationMap) : this.locationStore, 
+                    rootElementFilter);
     
             // Now create and add an error handler
             final ValidationEventHandlerImpl errorHandler = new ValidationEventHandlerImpl(this.events);
@@ -216,7 +252,15 @@ public class ReportingParser<T> {
             // Start the SAX parser but using *our* new handler
             final XMLReader xmlReader = spf.newSAXParser().getXMLReader();
             xmlReader.setContentHandler(actualHandler);
-            xmlReader.parse(input);
+            // Decompress the input, if required, as it is read
+            final InputSource actualInput = CompressedInput.open(input);
+            try {
+                xmlReader.parse(actualInput);
+            } finally {
+                if (actualInput != input) {
+                    actualInput.getByteStream().close();
+                }
+            }
 
             // Retrieve the result from the handler, note that this is actually
             // the bridge back to JAX-B
@@ -226,13 +270,27 @@ public class ReportingParser<T> {
             // ignore, these are reported in the validation errors.
         } catch (JAXBException ex) {
             this.events.add(new ValidationErrorImpl(Severity.FATAL, "JAX-B configuration exception", ex));
+        } catch (SAXParseException ex) {
+            this.events.add(new ValidationErrorImpl(Severity.FATAL, ex.getMessage(), new LocationImpl(ex.getLineNumber(), ex.getColumnNumber()), ex));
         } catch (SAXException ex) {
             this.events.add(new ValidationErrorImpl(Severity.FATAL, "IO error reading from InputSource", ex));
+        } catch (IllegalStateException ex) {
+            // the location store is closed or could not grow
+            this.events.add(new ValidationErrorImpl(Severity.FATAL, "Could not record location: " + ex.getMessage(), ex));
         }
         
         return this.result;
     }
     
+    /*
+     * Clear any state left over from a previous parse.
+     */
+    private void reset() {
+        this.result = null;
+        this.events = new LinkedList<ValidationError>();
+        this.locationMap = new HashMap<Object, LocationImpl>();
+    }
+    
     /**
      * Return the result of the last parse operation.
      * 
@@ -259,9 +317,57 @@ public class ReportingParser<T> {
      * start element which was the root of the XML that was unmarshalled
      * into the given object.
      * 
+     * If a {@link LocationStore} has been set on this parser the map will
+     * be empty, locations having been recorded in the store instead.
+     * 
      * @return the map of parsed object to XML location
      */
     public Map<Object, LocationImpl> getLocationMap() {
         return this.locationMap;
     }
+    
+    /**
+     * Return the location of a parsed object in the XML, using either the
+     * location store set on this parser or the location map.
+     * 
+     * @param object a parsed object
+     * @return the location of the object, or <code>null</code> if the object
+     *     has no recorded location or nothing has been parsed
+     */
+    public Location getLocation(final Object object) {
+        if (this.locationStore != null) {
+            return this.locationStore.getLocation(object);
+        }
+        return this.locationMap == null ? null : this.locationMap.get(object);
+    }
+    
+    /**
+     * Return the location store used by this parser.
+     * 
+     * @return the location store, or <code>null</code> if locations are 
+     *     recorded in the location map
+     */
+    public LocationStore getLocationStore() {
+        return this.locationStore;
+    }
+    
+    /**
+     * Set a store to record the location of parsed objects into, instead of
+     * the location map. The store is not cleared between parse operations,
+     * which allows a single store to be shared by a number of parsers; see
+     * {@link WeakLocationStore} for a store that does not keep parsed 
+     * objects reachable, and {@link OffHeapLocationStore} for a store that
+     * keeps location data off the heap for very large documents.
+     * 
+     * If the store fails, by throwing an {@link IllegalStateException} as 
+     * {@link OffHeapLocationStore} does once closed or if it cannot map more
+     * memory, the parse is abandoned and the failure is reported as a fatal
+     * error.
+     * 
+     * @param locationStore the location store, or <code>null</code> to 
+     *     record locations in the location map
+     */
+    public void setLocationStore(final LocationStore locationStore) {
+        this.locationStore = locationStore;
+    }
 }
\ No newline at end of file
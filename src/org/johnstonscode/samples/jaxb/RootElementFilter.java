@@ -0,0 +1,25 @@
+package org.johnstonscode.samples.jaxb;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * This is a simple callback used by {@link DelegatingHandlerImpl} to
+ * notify interested parties of the first (root) start element in the
+ * document, before it is passed on to JAX-B. This allows a client to
+ * inspect, and possibly reject, a document without buffering any of
+ * the input.
+ *
+ */
+interface RootElementFilter {
+
+    /**
+     * Called once per document for the root start element.
+     * 
+     * @param uri the namespace URI of the root element, or the empty string
+     * @param localName the local name of the root element
+     * @param locator the SAX locator, which may be <code>null</code>
+     * @throws SAXException to stop processing the document
+     */
+    void rootElement(String uri, String localName, Locator locator) throws SAXException;
+}
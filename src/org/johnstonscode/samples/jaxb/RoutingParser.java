@@ -0,0 +1,380 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.beans.Introspector;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.JAXBIntrospector;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * This is a parser that accepts a number of different document types,
+ * routing each document to the correct root class by looking at the first
+ * start element in the document. Rather than trying {@link ReportingParser}
+ * with one class after another this parser creates a single
+ * {@link JAXBContext} for all of the root classes when it is constructed
+ * and reuses it for every parse.
+ *
+ * The root element is inspected as it streams past in the SAX events, so
+ * no buffering of the input is required. If the root element does not
+ * match any of the configured root classes the parse is stopped
+ * immediately and a single fatal error is reported at the location of the
+ * root element.
+ *
+ * The parser may be configured with either a set of root classes, or with
+ * a JAX-B context path (a colon separated list of package names). In the
+ * latter case the root classes are found from the <code>jaxb.index</code>
+ * file in each package; a package that only provides an
+ * <code>ObjectFactory</code> is accepted but root elements cannot then be
+ * checked before JAX-B sees them.
+ *
+ * As with {@link ReportingParser} instances are not thread safe, however
+ * the underlying context is, so many parsers may be created cheaply for a
+ * shared context using {@link #RoutingParser(RoutingParser)}.
+ *
+ * @author simonjo
+ *
+ */
+public class RoutingParser {
+
+    /*
+     * Used in JAX-B annotations to denote a default value.
+     */
+    private static final String DEFAULT = "##default";
+    /*
+     * The name of the file JAX-B uses to list the classes in a package.
+     */
+    private static final String INDEX_FILE = "jaxb.index";
+
+    /*
+     * The single context shared across all parse operations.
+     */
+    private final JAXBContext context;
+    /*
+     * The map of root element names to the class unmarshalled from them.
+     */
+    private final Map<QName, Class<?>> rootElements;
+    /*
+     * The parser we actually delegate to.
+     */
+    private final ReportingParser<Object> parser;
+    /*
+     * The root element of the last parse operation.
+     */
+    private QName rootElement;
+
+    /**
+     * Construct a new parser for the given set of root classes.
+     *
+     * @param rootClasses the classes that may appear as the document root
+     * @throws JAXBException if a context could not be created for the classes
+     */
+    public RoutingParser(final Class<?>... rootClasses) throws JAXBException {
+        this.context = JAXBContext.newInstance(rootClasses);
+        final Map<QName, Class<?>> elements = new HashMap<QName, Class<?>>();
+        for (final Class<?> rootClass : rootClasses) {
+            addRootElement(elements, rootClass);
+        }
+        this.rootElements = Collections.unmodifiableMap(elements);
+        this.parser = new ReportingParser<Object>();
+    }
+
+    /**
+     * Construct a new parser for the given JAX-B context path, the classes
+     * are loaded using the current thread's context class loader or, if
+     * there is none, the class loader of this class.
+     *
+     * @param contextPath a colon separated list of package names
+     * @throws JAXBException if a context could not be created for the path
+     */
+    public RoutingParser(final String contextPath) throws JAXBException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = RoutingParser.class.getClassLoader();
+        }
+        this.context = JAXBContext.newInstance(contextPath, classLoader);
+        final Map<QName, Class<?>> elements = new HashMap<QName, Class<?>>();
+        for (final String packageName : contextPath.split(":")) {
+            for (final Class<?> rootClass : loadIndex(classLoader, packageName.trim())) {
+                addRootElement(elements, rootClass);
+            }
+        }
+        this.rootElements = Collections.unmodifiableMap(elements);
+        this.parser = new ReportingParser<Object>();
+    }
+
+    /**
+     * Construct a new parser that shares the context of an existing one,
+     * this is cheap and allows each thread to have its own parser.
+     *
+     * @param other the parser whose configuration should be shared
+     */
+    public RoutingParser(final RoutingParser other) {
+        this.context = other.context;
+        this.rootElements = other.rootElements;
+        this.parser = new ReportingParser<Object>();
+    }
+
+    /**
+     * Parse the given file and return the root object unmarshalled
+     * by JAX-B. The method will return <code>null</code> on errors
+     * reading from the input or misconfigured SAX/JAX-B.
+     *
+     * @param fileName the name of a file to parse
+     *
+     * @return the root object unmarshalled by JAX-B, or <code>null</code>
+     *     on error.
+     * @throws ParserConfigurationException implies the JAXB configuration is
+     *     not valid
+     * @throws IOException implies that the parser could not read from the
+     *     input source
+     */
+    public Object parse(final String fileName) throws ParserConfigurationException, IOException {
+        return parse(new InputSource(fileName), null);
+    }
+
+    /**
+     * Parse the given input stream and return the root object unmarshalled
+     * by JAX-B. The method will return <code>null</code> on errors
+     * reading from the input or misconfigured SAX/JAX-B.
+     *
+     * @param input the input stream to parse
+     *
+     * @return the root object unmarshalled by JAX-B, or <code>null</code>
+     *     on error.
+     * @throws ParserConfigurationException implies the JAXB configuration is
+     *     not valid
+     * @throws IOException implies that the parser could not read from the
+     *     input source
+     */
+    public Object parse(final InputStream input) throws ParserConfigurationException, IOException {
+        return parse(new InputSource(input), null);
+    }
+
+    /**
+     * Parse the given reader and return the root object unmarshalled
+     * by JAX-B. The method will return <code>null</code> on errors
+     * reading from the input or misconfigured SAX/JAX-B.
+     *
+     * @param input the reader stream to parse
+     *
+     * @return the root object unmarshalled by JAX-B, or <code>null</code>
+     *     on error.
+     * @throws ParserConfigurationException implies the JAXB configuration is
+     *     not valid
+     * @throws IOException implies that the parser could not read from the
+     *     input source
+     */
+    public Object parse(final Reader input) throws ParserConfigurationException, IOException {
+        return parse(new InputSource(input), null);
+    }
+
+    /**
+     * Parse the given input source and return the root object unmarshalled
+     * by JAX-B. The method will return <code>null</code> on errors
+     * reading from the input or misconfigured SAX/JAX-B, or if the root
+     * element is not one of the configured root classes.
+     *
+     * @param input the input source to parse
+     * @param schemaPath the path to an XML Schema definition to use for validation
+     *
+     * @return the root object unmarshalled by JAX-B, or <code>null</code>
+     *     on error.
+     * @throws ParserConfigurationException implies the JAXB configuration is
+     *     not valid
+     * @throws IOException implies that the parser could not read from the
+     *     input source
+     */
+    public Object parse(final InputSource input, final String schemaPath) throws ParserConfigurationException, IOException {
+        this.rootElement = null;
+        return this.parser.parse(input, schemaPath, this.context, new RootElementFilter() {
+            @Override
+            public void rootElement(final String uri, final String localName, final Locator locator) throws SAXException {
+                final QName name = new QName(uri, localName);
+                RoutingParser.this.rootElement = name;
+                if (!RoutingParser.this.rootElements.isEmpty() && !RoutingParser.this.rootElements.containsKey(name)) {
+                    throw new SAXParseException(String.format(
+                            "Unexpected root element %s, expected one of %s",
+                            name, RoutingParser.this.rootElements.keySet()), locator);
+                }
+            }
+        });
+    }
+
+    /**
+     * Return the result of the last parse operation.
+     *
+     * @return the root object unmarshalled by JAX-B, or <code>null</code>
+     *     on error.
+     */
+    public Object getResult() {
+        return this.parser.getResult();
+    }
+
+    /**
+     * Return the result of the last parse operation if it is an instance of
+     * the given class.
+     *
+     * @param <T> the expected type of the result
+     * @param classOfT the expected class of the result
+     *
+     * @return the root object unmarshalled by JAX-B, or <code>null</code>
+     *     on error or if the result is of a different class.
+     */
+    public <T> T getResult(final Class<T> classOfT) {
+        final Object result = JAXBIntrospector.getValue(this.parser.getResult());
+        return classOfT.isInstance(result) ? classOfT.cast(result) : null;
+    }
+
+    /**
+     * Return the name of the root element found by the last parse operation.
+     *
+     * @return the root element name, or <code>null</code> if no element was
+     *     read.
+     */
+    public QName getRootElement() {
+        return this.rootElement;
+    }
+
+    /**
+     * Return the root class that the last parse operation was routed to.
+     *
+     * @return the root class, or <code>null</code> if no element was read or
+     *     it did not match a configured root class.
+     */
+    public Class<?> getRootClass() {
+        final Class<?> rootClass = this.rootElements.get(this.rootElement);
+        if (rootClass == null && this.parser.getResult() != null) {
+            return JAXBIntrospector.getValue(this.parser.getResult()).getClass();
+        }
+        return rootClass;
+    }
+
+    /**
+     * Return the map of root element names to root classes this parser
+     * accepts; the map will be empty if the parser was configured with a
+     * package that has no <code>jaxb.index</code>.
+     *
+     * @return the map of root element names to root classes
+     */
+    public Map<QName, Class<?>> getRootElements() {
+        return this.rootElements;
+    }
+
+    /**
+     * Return the list of errors recorded during parsing, this will always
+     * return a list, but that list may be empty.
+     *
+     * @return a list of validation errors
+     */
+    public List<ValidationError> getEvents() {
+        return this.parser.getEvents();
+    }
+
+    /**
+     * Return the map that allows the client to determine the location of
+     * a parsed object in the XML.
+     *
+     * @return the map of parsed object to XML location
+     * @see ReportingParser#getLocationMap()
+     */
+    public Map<Object, LocationImpl> getLocationMap() {
+        return this.parser.getLocationMap();
+    }
+
+    /**
+     * Return the location of a parsed object in the XML.
+     *
+     * @param object a parsed object
+     * @return the location of the object, or <code>null</code> if the object
+     *     has no recorded location
+     * @see ReportingParser#getLocation(Object)
+     */
+    public Location getLocation(final Object object) {
+        return this.parser.getLocation(object);
+    }
+
+    /**
+     * Set a store to record the location of parsed objects into, instead of
+     * the location map.
+     *
+     * @param locationStore the location store, or <code>null</code> to
+     *     record locations in the location map
+     * @see ReportingParser#setLocationStore(LocationStore)
+     */
+    public void setLocationStore(final LocationStore locationStore) {
+        this.parser.setLocationStore(locationStore);
+    }
+
+    /*
+     * Add the root element name for a class annotated with XmlRootElement,
+     * other classes may be in the context but cannot be a document root.
+     */
+    private static void addRootElement(final Map<QName, Class<?>> elements, final Class<?> rootClass) {
+        final XmlRootElement annotation = rootClass.getAnnotation(XmlRootElement.class);
+        if (annotation == null) {
+            return;
+        }
+        String name = annotation.name();
+        if (DEFAULT.equals(name)) {
+            name = Introspector.decapitalize(rootClass.getSimpleName());
+        }
+        String namespace = annotation.namespace();
+        if (DEFAULT.equals(namespace)) {
+            final Package rootPackage = rootClass.getPackage();
+            final XmlSchema schema = rootPackage == null ? null : rootPackage.getAnnotation(XmlSchema.class);
+            namespace = schema == null ? "" : schema.namespace();
+        }
+        elements.put(new QName(namespace, name), rootClass);
+    }
+
+    /*
+     * Load the classes listed in the jaxb.index file for a package, if the
+     * package has no index file an empty list is returned.
+     */
+    private static List<Class<?>> loadIndex(final ClassLoader classLoader, final String packageName) throws JAXBException {
+        final List<Class<?>> classes = new LinkedList<Class<?>>();
+        final InputStream indexIS = classLoader.getResourceAsStream(packageName.replace('.', '/') + "/" + INDEX_FILE);
+        if (indexIS == null) {
+            return classes;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(indexIS, "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int comment = line.indexOf('#');
+                    final String className = (comment < 0 ? line : line.substring(0, comment)).trim();
+                    if (className.length() > 0) {
+                        classes.add(classLoader.loadClass(packageName + "." + className));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            throw new JAXBException("Could not read " + INDEX_FILE + " for package " + packageName, ex);
+        } catch (ClassNotFoundException ex) {
+            throw new JAXBException("Could not load class listed in " + INDEX_FILE + " for package " + packageName, ex);
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,65 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.util.List;
+import java.util.Map;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+
+/**
+ * This is the interface provided to each {@link ValidationRule}, giving
+ * access to the objects in the unmarshalled graph, indexes over those
+ * objects, and their locations in the XML. All methods are safe to call
+ * from concurrently running rules.
+ * 
+ * @author simonjo
+ *
+ */
+public interface RuleContext {
+
+    /**
+     * Return the root object of the graph being validated.
+     * 
+     * @return the root object
+     */
+    Object getRoot();
+    
+    /**
+     * Return all the objects in the graph that are instances of the given
+     * class, in the order they were found.
+     * 
+     * @param <T> the type of the objects
+     * @param classOfT the class of the objects
+     * @return a list of objects, which may be empty
+     */
+    <T> List<T> getObjects(Class<T> classOfT);
+    
+    /**
+     * Return an index of all the objects in the graph that are instances of
+     * the given class, by key. Objects with a <code>null</code> key are not
+     * indexed. The index is built once for each class and key function.
+     * 
+     * @param <T> the type of the objects
+     * @param classOfT the class of the objects
+     * @param keyFunction the function returning the key for each object
+     * @return a map from key to the objects with that key
+     */
+    <T> Map<String, List<T>> getIndex(Class<T> classOfT, KeyFunction<? super T> keyFunction);
+    
+    /**
+     * Return the location of the given object in the XML.
+     * 
+     * @param object an object in the graph
+     * @return the location of the object, never <code>null</code>, however
+     *     the line and column may be {@link Location#UNKNOWN}
+     */
+    Location getLocation(Object object);
+    
+    /**
+     * Report an error at the location of the given object.
+     * 
+     * @param severity the severity of the error
+     * @param message the error message
+     * @param object the object the error relates to
+     */
+    void report(Severity severity, String message, Object object);
+}
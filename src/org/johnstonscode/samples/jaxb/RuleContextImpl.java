@@ -0,0 +1,66 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.util.List;
+import java.util.Map;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+
+/**
+ * This is the basic {@link RuleContext} implementation, one is created
+ * for each rule so that each rule records errors into its own list, while
+ * sharing the object graph index with all other rules.
+ *
+ */
+class RuleContextImpl implements RuleContext {
+    
+    private final ObjectGraphIndex index;
+    private final LocationStore locationStore;
+    private final List<ValidationError> events;
+    
+    public RuleContextImpl(final ObjectGraphIndex index, final LocationStore locationStore, final List<ValidationError> events) {
+        this.index = index;
+        this.locationStore = locationStore;
+        this.events = events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getRoot() {
+        return this.index.getRoot();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> List<T> getObjects(final Class<T> classOfT) {
+        return this.index.getObjects(classOfT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> Map<String, List<T>> getIndex(final Class<T> classOfT, final KeyFunction<? super T> keyFunction) {
+        return this.index.getIndex(classOfT, keyFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Location getLocation(final Object object) {
+        final Location location = this.locationStore == null ? null : this.locationStore.getLocation(object);
+        return location == null ? new LocationImpl(Location.UNKNOWN, Location.UNKNOWN) : location;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void report(final Severity severity, final String message, final Object object) {
+        this.events.add(new ValidationErrorImpl(severity, message, getLocation(object), object, null));
+    }
+}
@@ -0,0 +1,224 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+
+/**
+ * This is an engine that runs a set of {@link ValidationRule}s over an
+ * object graph after it has been unmarshalled by {@link ReportingParser},
+ * providing the cross-reference checks that JAX-B cannot do during the
+ * parse. Errors are reported as {@link ValidationError}s, located using the
+ * locations the parser recorded for each object, so they can be reported
+ * to the user alongside the errors from parsing.
+ *
+ * The graph is walked once before any rule is run, recording every model
+ * object by class; rules then look up the objects and key indexes they need
+ * from the {@link RuleContext} rather than comparing objects pairwise, so
+ * the checks are linear in the size of the graph.
+ *
+ * As rules are independent they are run concurrently, either on an executor
+ * provided by the client or on a pool owned by the engine, created when
+ * first needed with up to one (daemon) thread per available processor and
+ * kept for the lifetime of the engine. Idle threads in the pool exit after
+ * a few seconds, so an engine that is no longer used holds no threads;
+ * call {@link #shutdown()} to release the pool sooner. Errors are always returned
+ * in rule order, and in the order each rule reported them, so the result
+ * does not depend on scheduling.
+ *
+ * The engine holds no state between validations, other than its pool and
+ * the properties JAX-B binds for each model class it has seen, and may be
+ * shared by many threads.
+ *
+ * @author simonjo
+ *
+ */
+public class RuleEngine {
+
+    /*
+     * The time in seconds an idle thread of the owned pool is kept.
+     */
+    private static final long KEEP_ALIVE = 5;
+
+    /*
+     * The rules to run, in order.
+     */
+    private final List<ValidationRule> rules;
+    /*
+     * The bound properties of each model class seen by this engine.
+     */
+    private final ConcurrentMap<Class<?>, List<ObjectGraphIndex.BoundProperty>> properties;
+    /*
+     * The executor, if any, provided by the client.
+     */
+    private final ExecutorService executor;
+    /*
+     * The pool owned by this engine, if no executor was provided.
+     */
+    private ThreadPoolExecutor pool;
+
+    /**
+     * Construct a new engine that will run the given rules on a pool of
+     * threads owned by the engine.
+     *
+     * @param rules the rules to run
+     */
+    public RuleEngine(final ValidationRule... rules) {
+        this(null, rules);
+    }
+
+    /**
+     * Construct a new engine that will run the given rules on the given
+     * executor, the executor is not shut down by the engine.
+     *
+     * @param executor the executor to run rules on, or <code>null</code> to
+     *     use a pool owned by the engine
+     * @param rules the rules to run
+     */
+    public RuleEngine(final ExecutorService executor, final ValidationRule... rules) {
+        this.executor = executor;
+        this.properties = new ConcurrentHashMap<Class<?>, List<ObjectGraphIndex.BoundProperty>>();
+        this.rules = Collections.unmodifiableList(new ArrayList<ValidationRule>(Arrays.asList(rules)));
+    }
+
+    /**
+     * Validate the result of the last parse operation of the given parser,
+     * using the locations it recorded.
+     *
+     * @param parser the parser that unmarshalled the object graph
+     * @return a list of validation errors, which may be empty
+     */
+    public List<ValidationError> validate(final ReportingParser<?> parser) {
+        final LocationStore locationStore = parser.getLocationStore() == null
+            ? new MapLocationStore(parser.getLocationMap()) : parser.getLocationStore();
+        return validate(parser.getResult(), locationStore);
+    }
+
+    /**
+     * Validate the object graph with the given root, using the locations in
+     * the given store.
+     *
+     * @param root the root of the object graph
+     * @param locationStore the locations of the objects, or <code>null</code>
+     *     if locations are unknown
+     * @return a list of validation errors, which may be empty
+     */
+    public List<ValidationError> validate(final Object root, final LocationStore locationStore) {
+        final List<ValidationError> events = new LinkedList<ValidationError>();
+        if (root == null) {
+            return events;
+        }
+
+        final ObjectGraphIndex index;
+        try {
+            index = new ObjectGraphIndex(root, this.properties);
+        } catch (IllegalStateException ex) {
+            events.add(new ValidationErrorImpl(Severity.FATAL, "Could not read object graph", ex));
+            return events;
+        }
+
+        // Create the tasks, each rule records into its own list
+        final List<Callable<List<ValidationError>>> tasks = new ArrayList<Callable<List<ValidationError>>>(this.rules.size());
+        for (final ValidationRule rule : this.rules) {
+            tasks.add(new Callable<List<ValidationError>>() {
+                @Override
+                public List<ValidationError> call() {
+                    final List<ValidationError> ruleEvents = new LinkedList<ValidationError>();
+                    try {
+                        rule.validate(new RuleContextImpl(index, locationStore, ruleEvents));
+                    } catch (RuntimeException ex) {
+                        ruleEvents.add(new ValidationErrorImpl(Severity.FATAL, "Rule " + rule.getClass().getName() + " failed", ex));
+                    }
+                    return ruleEvents;
+                }
+            });
+        }
+
+        // A single rule is simply run on this thread
+        if (tasks.size() <= 1) {
+            for (final Callable<List<ValidationError>> task : tasks) {
+                try {
+                    events.addAll(task.call());
+                } catch (Exception ex) {
+                    // cannot happen, rule failures are reported by the task.
+                }
+            }
+            return events;
+        }
+
+        final ExecutorService actualExecutor = this.executor == null ? getPool() : this.executor;
+        try {
+            for (final Future<List<ValidationError>> future : actualExecutor.invokeAll(tasks)) {
+                try {
+                    events.addAll(future.get());
+                } catch (ExecutionException ex) {
+                    events.add(new ValidationErrorImpl(Severity.FATAL, "Rule failed", ex.getCause()));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            events.add(new ValidationErrorImpl(Severity.FATAL, "Validation interrupted", ex));
+        } catch (RejectedExecutionException ex) {
+            events.add(new ValidationErrorImpl(Severity.FATAL, "Executor has been shut down", ex));
+        }
+        return events;
+    }
+
+    /**
+     * Shut down the pool owned by this engine, if any, allowing running 
+     * validations to complete. An executor provided by the client is not
+     * shut down. If the engine is used again a new pool is created.
+     */
+    public synchronized void shutdown() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    /*
+     * Return the pool owned by this engine, creating it if required.
+     */
+    private synchronized ExecutorService getPool() {
+        if (this.pool == null) {
+            final int threads = Math.max(1, Math.min(this.rules.size(), Runtime.getRuntime().availableProcessors()));
+            this.pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = this.defaultFactory.newThread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+        return this.pool;
+    }
+
+    /**
+     * Return the rules run by this engine, in order.
+     *
+     * @return the list of rules
+     */
+    public List<ValidationRule> getRules() {
+        return this.rules;
+    }
+}
@@ -0,0 +1,50 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * This class keeps compiled XML Schemas by path so that each schema is
+ * only loaded and compiled once, no matter how many parse or marshal
+ * operations use it. A compiled {@link Schema} is immutable and thread
+ * safe, so one instance may be shared by every parser and marshaller.
+ *
+ */
+final class SchemaCache {
+    
+    private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<String, Schema>();
+    
+    private SchemaCache() {
+        // Not to be instantiated.
+    }
+    
+    /**
+     * Return the compiled schema for the given path, loading it from the
+     * system class path if it has not been loaded before.
+     * 
+     * @param schemaPath the path to an XML Schema definition
+     * @return the compiled schema
+     * @throws SAXException if the schema could not be loaded or compiled
+     */
+    static Schema getSchema(final String schemaPath) throws SAXException {
+        Schema schema = SCHEMAS.get(schemaPath);
+        if (schema == null) {
+            final SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            final InputStream schemaIS = ClassLoader.getSystemResourceAsStream(schemaPath);
+            schema = sf.newSchema(new StreamSource(schemaIS));
+            final Schema existing = SCHEMAS.putIfAbsent(schemaPath, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema;
+    }
+}
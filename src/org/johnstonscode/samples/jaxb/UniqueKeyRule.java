@@ -0,0 +1,66 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.util.List;
+import java.util.Map;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+
+/**
+ * This rule checks that the key of every object of a given class is
+ * unique within the graph, for example that no two <code>Property</code>
+ * objects share the same key. An error is reported at the location of each
+ * duplicate, that is each object after the first with the same key.
+ * 
+ * @author simonjo
+ *
+ * @param <T> the type of the objects to check
+ */
+public class UniqueKeyRule<T> implements ValidationRule {
+    
+    private final Class<T> classOfT;
+    private final KeyFunction<? super T> keyFunction;
+    private final Severity severity;
+    
+    /**
+     * Construct a new rule that reports duplicates as errors.
+     * 
+     * @param classOfT the class of the objects to check
+     * @param keyFunction the function returning the key for each object
+     */
+    public UniqueKeyRule(final Class<T> classOfT, final KeyFunction<? super T> keyFunction) {
+        this(classOfT, keyFunction, Severity.ERROR);
+    }
+    
+    /**
+     * Construct a new rule.
+     * 
+     * @param classOfT the class of the objects to check
+     * @param keyFunction the function returning the key for each object
+     * @param severity the severity to report duplicates with
+     */
+    public UniqueKeyRule(final Class<T> classOfT, final KeyFunction<? super T> keyFunction, final Severity severity) {
+        this.classOfT = classOfT;
+        this.keyFunction = keyFunction;
+        this.severity = severity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void validate(final RuleContext context) {
+        for (final Map.Entry<String, List<T>> entry : context.getIndex(this.classOfT, this.keyFunction).entrySet()) {
+            final List<T> objects = entry.getValue();
+            if (objects.size() > 1) {
+                final Location first = context.getLocation(objects.get(0));
+                for (final T duplicate : objects.subList(1, objects.size())) {
+                    context.report(this.severity, String.format(
+                            "Duplicate %s key '%s', first defined at (%d:%d)", 
+                            this.classOfT.getSimpleName(), entry.getKey(),
+                            Integer.valueOf(first.getLineNumber()), Integer.valueOf(first.getColumnNumber())), 
+                            duplicate);
+                }
+            }
+        }
+    }
+}
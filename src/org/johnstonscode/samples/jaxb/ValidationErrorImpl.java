@@ -6,17 +6,31 @@ import javax.xml.bind.ValidationEvent;
  * @author simonjo
  *
  */
-class ValidationErrorImpl implements ValidationError {
+class ValidationErrorImpl implements ObjectValidationError {
     
     private final Severity severity;
     private final String message;
     private final Location location;
+    private final Object object;
     private final Throwable cause;
 
     public ValidationErrorImpl(final Severity severity, final String message, final Throwable cause) {
         this.severity = severity;
         this.message = message;
         this.location = new LocationImpl(Location.UNKNOWN, Location.UNKNOWN);
+        this.object = null;
+        this.cause = cause;
+    }
+
+    public ValidationErrorImpl(final Severity severity, final String message, final Location location, final Throwable cause) {
+        this(severity, message, location, null, cause);
+    }
+
+    public ValidationErrorImpl(final Severity severity, final String message, final Location location, final Object object, final Throwable cause) {
+        this.severity = severity;
+        this.message = message;
+        this.location = location;
+        this.object = object;
         this.cause = cause;
     }
 
@@ -33,8 +47,10 @@ class ValidationErrorImpl implements ValidationError {
         this.cause = event.getLinkedException();
         if (event.getLocator() == null) {
             this.location = new LocationImpl(Location.UNKNOWN, Location.UNKNOWN);
+            this.object = null;
         } else {
             this.location = new LocationImpl(event.getLocator().getLineNumber(), event.getLocator().getColumnNumber());
+            this.object = event.getLocator().getObject();
         }
     }
     
@@ -62,6 +78,14 @@ class ValidationErrorImpl implements ValidationError {
         return this.location;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getObject() {
+        return this.object;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,20 @@
+package org.johnstonscode.samples.jaxb;
+
+/**
+ * This is the interface implemented by rules run by the {@link RuleEngine}
+ * over an unmarshalled object graph, after parsing. Rules should not
+ * depend on each other, and must only report errors through the
+ * {@link RuleContext} as rules may be run concurrently.
+ * 
+ * @author simonjo
+ *
+ */
+public interface ValidationRule {
+
+    /**
+     * Check the object graph, reporting any errors to the context.
+     * 
+     * @param context the context providing the indexed object graph
+     */
+    void validate(RuleContext context);
+}
@@ -0,0 +1,123 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This is a {@link LocationStore} that only holds weak references to the
+ * unmarshalled objects, so that recording locations never keeps an object
+ * graph reachable. As objects are garbage collected their locations are
+ * removed from the store, the clean up happens as a side effect of calls
+ * to {@link #setLocation(Object, int, int)}, {@link #getLocation(Object)}
+ * and {@link #size()} so no background thread is required.
+ * 
+ * The store is safe for concurrent use, so a single store may be shared by
+ * a number of parsers and read by any number of threads while a cached
+ * model is in use.
+ * 
+ * @author simonjo
+ *
+ */
+public class WeakLocationStore implements LocationStore {
+
+    /*
+     * The actual store, keyed by a weak identity reference to the object.
+     */
+    private final ConcurrentMap<Reference<Object>, LocationImpl> locations;
+    /*
+     * The queue to which the garbage collector adds cleared keys.
+     */
+    private final ReferenceQueue<Object> queue;
+    
+    /**
+     * Construct a new, empty, store.
+     */
+    public WeakLocationStore() {
+        this.locations = new ConcurrentHashMap<Reference<Object>, LocationImpl>();
+        this.queue = new ReferenceQueue<Object>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLocation(final Object object, final int line, final int column) {
+        expunge();
+        this.locations.put(new IdentityWeakReference(object, this.queue), new LocationImpl(line, column));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Location getLocation(final Object object) {
+        expunge();
+        if (object == null) {
+            return null;
+        }
+        return this.locations.get(new IdentityWeakReference(object, null));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        expunge();
+        return this.locations.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.locations.clear();
+        expunge();
+    }
+    
+    /*
+     * Remove the entries for any keys cleared by the garbage collector.
+     */
+    private void expunge() {
+        Reference<? extends Object> reference;
+        while ((reference = this.queue.poll()) != null) {
+            this.locations.remove(reference);
+        }
+    }
+    
+    /*
+     * A weak reference that uses the identity of the referent for hashing
+     * and equality, and which keeps its hash code once the referent has
+     * been cleared so that it can still be removed from the map.
+     */
+    private static final class IdentityWeakReference extends WeakReference<Object> {
+        
+        private final int hash;
+        
+        IdentityWeakReference(final Object referent, final ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof IdentityWeakReference)) {
+                return false;
+            }
+            final Object referent = get();
+            return referent != null && referent == ((IdentityWeakReference)other).get();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import junit.framework.Assert;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+import org.johnstonscode.samples.jaxb.model.Configuration;
+import org.junit.Test;
+
+/**
+ * @author simonjo
+ *
+ */
+public class OffHeapLocationStoreTests {
+
+    private void runStoreTest(final OffHeapLocationStore store, final int objects) throws IOException {
+        final Object[] parsed = new Object[objects];
+        for (int i = 0; i < objects; i++) {
+            parsed[i] = new Object();
+            store.setLocation(parsed[i], i + 1, i % 80 + 1);
+        }
+        Assert.assertEquals(objects, store.size());
+        for (int i = 0; i < objects; i++) {
+            final Location location = store.getLocation(parsed[i]);
+            Assert.assertEquals(i + 1, location.getLineNumber());
+            Assert.assertEquals(i % 80 + 1, location.getColumnNumber());
+        }
+        Assert.assertNull(store.getLocation(new Object()));
+        store.close();
+        Assert.assertEquals(0, store.size());
+        Assert.assertNull(store.getLocation(parsed[0]));
+    }
+
+    @Test
+    public void testDirectMemory() throws IOException {
+        runStoreTest(new OffHeapLocationStore(), 100000);
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        runStoreTest(new OffHeapLocationStore(null), 100000);
+    }
+
+    @Test
+    public void testReplaceAndClear() throws IOException {
+        final OffHeapLocationStore store = new OffHeapLocationStore();
+        final Object object = new Object();
+        store.setLocation(object, 1, 1);
+        store.setLocation(object, 2, 3);
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(2, store.getLocation(object).getLineNumber());
+        store.clear();
+        Assert.assertEquals(0, store.size());
+        Assert.assertNull(store.getLocation(object));
+        store.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws IOException {
+        final OffHeapLocationStore store = new OffHeapLocationStore();
+        store.close();
+        store.setLocation(new Object(), 1, 1);
+    }
+
+    @Test
+    public void testClosedDuringParse() throws IOException, ParserConfigurationException {
+        final OffHeapLocationStore store = new OffHeapLocationStore();
+        store.close();
+        final ReportingParser<Configuration> parser = new ReportingParser<Configuration>();
+        parser.setLocationStore(store);
+        final Configuration root = parser.parse(new ByteArrayInputStream(
+                "<Configuration xmlns=\"http://example.org/xmlns/configuration\"/>".getBytes()), Configuration.class);
+        Assert.assertNull(root);
+        Assert.assertEquals(1, parser.getEvents().size());
+        Assert.assertEquals(Severity.FATAL, parser.getEvents().get(0).getSeverity());
+    }
+}
@@ -0,0 +1,139 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.parsers.ParserConfigurationException;
+
+import junit.framework.Assert;
+
+import org.johnstonscode.samples.jaxb.model.Configuration;
+import org.johnstonscode.samples.jaxb.model.Property;
+import org.junit.Test;
+
+/**
+ * @author simonjo
+ *
+ */
+public class ReportingMarshallerTests {
+    
+    static final String SCHEMA_PATH = "org/johnstonscode/samples/jaxb/model/configuration.xsd";
+    
+    private Configuration buildConfiguration(final int size) {
+        final Collection<Property> properties = new ArrayList<Property>();
+        for (int i = 0; i < size; i++) {
+            final Property property = new Property();
+            property.setKey("name" + i);
+            property.setValue("a value " + i);
+            properties.add(property);
+        }
+        final Configuration configuration = new Configuration();
+        configuration.setProperties(properties);
+        return configuration;
+    }
+    
+    private void checkRoundTrip(final Configuration original, final byte[] bytes) throws ParserConfigurationException, IOException {
+        final ReportingParser<Configuration> parser = new ReportingParser<Configuration>();
+        final Configuration parsed = parser.parse(new ByteArrayInputStream(bytes), Configuration.class);
+        Assert.assertEquals(0, parser.getEvents().size());
+        Assert.assertEquals(original.getProperties().size(), parsed.getProperties().size());
+        final Iterator<Property> expected = original.getProperties().iterator();
+        for (final Property property : parsed.getProperties()) {
+            Assert.assertEquals(expected.next().getKey(), property.getKey());
+        }
+    }
+
+    @Test
+    public void testMarshalToStream() throws JAXBException, ParserConfigurationException, IOException {
+        final Configuration configuration = buildConfiguration(10);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ReportingMarshaller<Configuration> marshaller = new ReportingMarshaller<Configuration>(Configuration.class);
+        Assert.assertTrue(marshaller.marshal(configuration, output));
+        Assert.assertEquals(0, marshaller.getEvents().size());
+        checkRoundTrip(configuration, output.toByteArray());
+    }
+
+    @Test
+    public void testMarshalToChannel() throws JAXBException, ParserConfigurationException, IOException {
+        final Configuration configuration = buildConfiguration(5000);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ReportingMarshaller<Configuration> marshaller = new ReportingMarshaller<Configuration>(Configuration.class);
+        marshaller.setFormattedOutput(true);
+        Assert.assertTrue(marshaller.marshal(configuration, Channels.newChannel(output)));
+        Assert.assertTrue(output.size() > PooledOutputStream.BUFFER_SIZE);
+        checkRoundTrip(configuration, output.toByteArray());
+    }
+
+    @Test
+    public void testPooledOutputStream() throws IOException {
+        final byte[] data = new byte[3 * PooledOutputStream.BUFFER_SIZE + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)i;
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final PooledOutputStream pooled = new PooledOutputStream(Channels.newChannel(output));
+        pooled.write(data[0]);
+        pooled.write(data, 1, data.length - 1);
+        pooled.close();
+        pooled.close();
+        Assert.assertEquals(data.length, output.size());
+        final byte[] written = output.toByteArray();
+        for (int i = 0; i < data.length; i++) {
+            Assert.assertEquals(data[i], written[i]);
+        }
+    }
+
+    @Test
+    public void testPooledOutputStreamRelease() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final PooledOutputStream pooled = new PooledOutputStream(output);
+        pooled.write(new byte[10], 0, 10);
+        pooled.release();
+        pooled.close();
+        Assert.assertEquals(0, output.size());
+    }
+
+    @Test(expected = IllegalBlockingModeException.class)
+    public void testPooledOutputStreamNonBlocking() throws IOException {
+        final Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            new PooledOutputStream(pipe.sink());
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    @Test
+    public void testMarshalWithSchema() throws JAXBException, ParserConfigurationException, IOException {
+        final Configuration configuration = buildConfiguration(3);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ReportingMarshaller<Configuration> marshaller = new ReportingMarshaller<Configuration>(Configuration.class);
+        Assert.assertTrue(marshaller.marshal(configuration, output, SCHEMA_PATH));
+        Assert.assertEquals(0, marshaller.getEvents().size());
+        checkRoundTrip(configuration, output.toByteArray());
+    }
+
+    @Test
+    public void testMarshalInvalidWithSchema() throws JAXBException, IOException {
+        final Configuration configuration = buildConfiguration(3);
+        final Property invalid = new Property();
+        invalid.setKey("invalid");
+        configuration.getProperties().add(invalid);
+        final ReportingMarshaller<Configuration> marshaller = new ReportingMarshaller<Configuration>(Configuration.class);
+        Assert.assertFalse(marshaller.marshal(configuration, new ByteArrayOutputStream(), SCHEMA_PATH));
+        Assert.assertEquals(1, marshaller.getEvents().size());
+        final ValidationError error = marshaller.getEvents().get(0);
+        Assert.assertTrue(error instanceof ObjectValidationError);
+        Assert.assertSame(invalid, ((ObjectValidationError)error).getObject());
+    }
+}
@@ -1,7 +1,13 @@
 package org.johnstonscode.samples.jaxb;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.Map.Entry;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -9,7 +15,9 @@ import javax.xml.parsers.ParserConfigurationException;
 import junit.framework.Assert;
 
 import org.johnstonscode.samples.jaxb.model.Configuration;
+import org.johnstonscode.samples.jaxb.model.Property;
 import org.junit.Test;
+import org.xml.sax.InputSource;
 
 /**
  * @author simonjo
@@ -110,4 +118,82 @@ public class ReportingParserTests {
                 "  <pair key=\"name3\" value=\"a value\"></pair>\n" +
                 "</Configuration>", 2);
     }
+
+    private static final String COMPRESSED_SOURCE = 
+            "<Configuration xmlns=\"http://example.org/xmlns/configuration\">\n" +
+            "  <property key=\"name\" value=\"a value\"></property>\n" +
+            "  <property key=\"name2\" value=\"a value\"></property>\n" +
+            "</Configuration>";
+
+    private static void compress(final String source, final OutputStream output) throws IOException {
+        final GZIPOutputStream gzip = new GZIPOutputStream(output);
+        gzip.write(source.getBytes());
+        gzip.close();
+    }
+
+    private static void checkCompressedResult(final ReportingParser<Configuration> parser, final Configuration root) {
+        Assert.assertEquals(0, parser.getEvents().size());
+        Assert.assertEquals(2, root.getProperties().size());
+        int line = 2;
+        for (final Object property : root.getProperties()) {
+            Assert.assertEquals(line++, parser.getLocation(property).getLineNumber());
+        }
+    }
+
+    @Test
+    public void testCompressedStream() throws ParserConfigurationException, IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compress(COMPRESSED_SOURCE, compressed);
+        final ReportingParser<Configuration> parser = new ReportingParser<Configuration>();
+        final Configuration root = parser.parse(new ByteArrayInputStream(compressed.toByteArray()), Configuration.class);
+        checkCompressedResult(parser, root);
+    }
+
+    @Test
+    public void testCompressedFile() throws ParserConfigurationException, IOException {
+        final File file = File.createTempFile("configuration", ".xml.gz");
+        try {
+            compress(COMPRESSED_SOURCE, new FileOutputStream(file));
+            final ReportingParser<Configuration> parser = new ReportingParser<Configuration>();
+            final Configuration root = parser.parse(file.getPath(), Configuration.class);
+            checkCompressedResult(parser, root);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCompressedInputStream() throws IOException {
+        final StringBuilder source = new StringBuilder();
+        for (int i = 0; source.length() < 4 * CompressedInput.BUFFER_SIZE; i++) {
+            source.append("  <property key=\"name").append(i).append("\" value=\"a value\"/>\n");
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compress(source.toString(), compressed);
+        for (int i = 0; i < 2; i++) {
+            final InputStream stream = CompressedInput.open(new InputSource(new ByteArrayInputStream(compressed.toByteArray()))).getByteStream();
+            final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1000];
+            for (int count = stream.read(buffer); count >= 0; count = stream.read(buffer)) {
+                inflated.write(buffer, 0, count);
+            }
+            stream.close();
+            stream.close();
+            Assert.assertEquals(source.toString(), inflated.toString());
+        }
+    }
+
+    @Test
+    public void testShortUncompressedInput() throws IOException {
+        final InputStream stream = CompressedInput.open(new InputSource(new ByteArrayInputStream(new byte[] { 0x1f }))).getByteStream();
+        Assert.assertEquals(0x1f, stream.read());
+        Assert.assertEquals(-1, stream.read());
+        stream.close();
+    }
+
+    @Test
+    public void testLocationBeforeParse() {
+        final ReportingParser<Configuration> parser = new ReportingParser<Configuration>();
+        Assert.assertNull(parser.getLocation(new Property()));
+    }
 }
@@ -0,0 +1,110 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+
+import junit.framework.Assert;
+
+import org.johnstonscode.samples.jaxb.indexed.Report;
+import org.johnstonscode.samples.jaxb.indexed.Summary;
+import org.johnstonscode.samples.jaxb.model.Configuration;
+import org.johnstonscode.samples.jaxb.model.Property;
+import org.junit.Test;
+
+/**
+ * @author simonjo
+ *
+ */
+public class RoutingParserTests {
+
+    private static final String NS = "http://example.org/xmlns/configuration";
+    private static final String INDEXED_NS = "http://example.org/xmlns/indexed";
+    private static final String INDEXED_PACKAGE = "org.johnstonscode.samples.jaxb.indexed";
+
+    private RoutingParser runParserTest(final String source, final int expectedErrors) throws JAXBException, ParserConfigurationException, IOException {
+        final RoutingParser parser = new RoutingParser(Configuration.class, Property.class);
+        parser.parse(new ByteArrayInputStream(source.getBytes()));
+        Assert.assertEquals(expectedErrors, parser.getEvents().size());
+        return parser;
+    }
+
+    @Test
+    public void testRootElements() throws JAXBException {
+        final RoutingParser parser = new RoutingParser(Configuration.class, Property.class);
+        Assert.assertEquals(1, parser.getRootElements().size());
+        Assert.assertEquals(Configuration.class, parser.getRootElements().get(new QName(NS, "Configuration")));
+    }
+
+    @Test
+    public void testRouteConfiguration() throws JAXBException, ParserConfigurationException, IOException {
+        final RoutingParser parser = runParserTest(
+                "<Configuration xmlns=\"" + NS + "\">" +
+                "<property key=\"name\" value=\"a value\"/>" +
+                "</Configuration>", 0);
+        Assert.assertEquals(new QName(NS, "Configuration"), parser.getRootElement());
+        Assert.assertEquals(Configuration.class, parser.getRootClass());
+        Assert.assertNotNull(parser.getResult(Configuration.class));
+        Assert.assertNull(parser.getResult(Property.class));
+    }
+
+    @Test
+    public void testUnknownRoot() throws JAXBException, ParserConfigurationException, IOException {
+        final RoutingParser parser = runParserTest(
+                "<Settings xmlns=\"" + NS + "\">\n" +
+                "  <property key=\"name\" value=\"a value\"/>\n" +
+                "</Settings>", 1);
+        Assert.assertNull(parser.getResult());
+        Assert.assertNull(parser.getRootClass());
+        Assert.assertEquals(new QName(NS, "Settings"), parser.getRootElement());
+        Assert.assertEquals(ValidationError.Severity.FATAL, parser.getEvents().get(0).getSeverity());
+        Assert.assertEquals(1, parser.getEvents().get(0).getLocation().getLineNumber());
+        Assert.assertTrue(parser.getLocationMap().isEmpty());
+    }
+
+    @Test
+    public void testSharedContext() throws JAXBException, ParserConfigurationException, IOException {
+        final RoutingParser first = new RoutingParser(Configuration.class);
+        final RoutingParser second = new RoutingParser(first);
+        second.parse(new ByteArrayInputStream(("<Configuration xmlns=\"" + NS + "\"/>").getBytes()));
+        Assert.assertTrue(second.getEvents().isEmpty());
+        Assert.assertNull(first.getResult());
+        Assert.assertNotNull(second.getResult(Configuration.class));
+    }
+
+    @Test
+    public void testContextPathIndex() throws JAXBException {
+        final RoutingParser parser = new RoutingParser(INDEXED_PACKAGE);
+        Assert.assertEquals(2, parser.getRootElements().size());
+        Assert.assertEquals(Report.class, parser.getRootElements().get(new QName(INDEXED_NS, "Report")));
+        Assert.assertEquals(Summary.class, parser.getRootElements().get(new QName(INDEXED_NS, "Summary")));
+    }
+
+    @Test
+    public void testContextPathRouting() throws JAXBException, ParserConfigurationException, IOException {
+        final RoutingParser parser = new RoutingParser(INDEXED_PACKAGE);
+        parser.parse(new ByteArrayInputStream(("<Summary xmlns=\"" + INDEXED_NS + "\" count=\"3\"/>").getBytes()));
+        Assert.assertTrue(parser.getEvents().isEmpty());
+        Assert.assertEquals(Summary.class, parser.getRootClass());
+        Assert.assertEquals(3, parser.getResult(Summary.class).getCount());
+
+        parser.parse(new ByteArrayInputStream(("<Configuration xmlns=\"" + NS + "\"/>").getBytes()));
+        Assert.assertEquals(1, parser.getEvents().size());
+        Assert.assertNull(parser.getResult());
+    }
+
+    @Test
+    public void testContextPathWithoutContextClassLoader() throws JAXBException {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(null);
+        try {
+            Assert.assertEquals(2, new RoutingParser(INDEXED_PACKAGE).getRootElements().size());
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+}
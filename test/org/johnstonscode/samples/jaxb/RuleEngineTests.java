@@ -0,0 +1,210 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import junit.framework.Assert;
+
+import org.johnstonscode.samples.jaxb.ValidationError.Severity;
+import org.johnstonscode.samples.jaxb.model.Configuration;
+import org.johnstonscode.samples.jaxb.model.EncryptedProperty;
+import org.johnstonscode.samples.jaxb.model.Extension;
+import org.johnstonscode.samples.jaxb.model.Group;
+import org.johnstonscode.samples.jaxb.model.Property;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * @author simonjo
+ *
+ */
+public class RuleEngineTests {
+    
+    private static final KeyFunction<Property> KEY = new KeyFunction<Property>() {
+        @Override
+        public String getKey(final Property object) {
+            return object.getKey();
+        }
+    };
+    
+    private static final KeyFunction<Property> VALUE = new KeyFunction<Property>() {
+        @Override
+        public String getKey(final Property object) {
+            return object.getValue();
+        }
+    };
+    
+    private Configuration configuration;
+    private LocationStore locations;
+    
+    private void buildModel(final String... keysAndValues) {
+        final Collection<Property> properties = new ArrayList<Property>();
+        this.locations = new MapLocationStore(new IdentityHashMap<Object, LocationImpl>());
+        this.configuration = new Configuration();
+        this.configuration.setProperties(properties);
+        this.locations.setLocation(this.configuration, 1, 1);
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            final Property property = new Property();
+            property.setKey(keysAndValues[i]);
+            property.setValue(keysAndValues[i + 1]);
+            properties.add(property);
+            this.locations.setLocation(property, i / 2 + 2, 3);
+        }
+    }
+
+    @Test
+    public void testGraphIndex() {
+        buildModel("a", "1", "b", "2", "c", "3");
+        final ObjectGraphIndex index = new ObjectGraphIndex(this.configuration);
+        Assert.assertEquals(1, index.getObjects(Configuration.class).size());
+        Assert.assertEquals(3, index.getObjects(Property.class).size());
+        Assert.assertEquals(4, index.getObjects(Object.class).size());
+        Assert.assertSame(index.getIndex(Property.class, KEY), index.getIndex(Property.class, KEY));
+    }
+
+    @Test
+    public void testUniqueKeys() {
+        buildModel("a", "1", "b", "2", "a", "3", null, "4", "a", "5");
+        final List<ValidationError> events = new RuleEngine(
+                new UniqueKeyRule<Property>(Property.class, KEY)).validate(this.configuration, this.locations);
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(Severity.ERROR, events.get(0).getSeverity());
+        Assert.assertEquals(4, events.get(0).getLocation().getLineNumber());
+        Assert.assertEquals(6, events.get(1).getLocation().getLineNumber());
+    }
+
+    @Test
+    public void testUniqueKeysInDocumentOrder() {
+        buildModel("a", "1");
+        final EncryptedProperty encrypted = new EncryptedProperty();
+        encrypted.setKey("b");
+        encrypted.setValue("2");
+        this.configuration.getProperties().add(encrypted);
+        this.locations.setLocation(encrypted, 3, 3);
+        final Property plain = new Property();
+        plain.setKey("b");
+        plain.setValue("3");
+        this.configuration.getProperties().add(plain);
+        this.locations.setLocation(plain, 4, 3);
+
+        final List<Property> properties = new ObjectGraphIndex(this.configuration).getObjects(Property.class);
+        Assert.assertEquals(3, properties.size());
+        Assert.assertSame(encrypted, properties.get(1));
+        Assert.assertSame(plain, properties.get(2));
+
+        final List<ValidationError> events = new RuleEngine(
+                new UniqueKeyRule<Property>(Property.class, KEY)).validate(this.configuration, this.locations);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(4, events.get(0).getLocation().getLineNumber());
+        Assert.assertTrue(events.get(0).getMessage().endsWith("first defined at (3:3)"));
+    }
+
+    @Test
+    public void testReferences() {
+        buildModel("a", "b", "b", "c", "c", "a", "d", "x");
+        final List<ValidationError> events = new RuleEngine(
+                new ReferenceRule<Property, Property>(Property.class, VALUE, Property.class, KEY)).validate(this.configuration, this.locations);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(5, events.get(0).getLocation().getLineNumber());
+    }
+
+    @Test
+    public void testParallelRulesInOrder() {
+        buildModel("a", "x", "a", "y");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final RuleEngine engine = new RuleEngine(executor,
+                    new ReferenceRule<Property, Property>(Property.class, VALUE, Property.class, KEY),
+                    new UniqueKeyRule<Property>(Property.class, KEY, Severity.WARNING));
+            for (int i = 0; i < 20; i++) {
+                final List<ValidationError> events = engine.validate(this.configuration, this.locations);
+                Assert.assertEquals(3, events.size());
+                Assert.assertEquals(Severity.ERROR, events.get(0).getSeverity());
+                Assert.assertEquals(Severity.ERROR, events.get(1).getSeverity());
+                Assert.assertEquals(Severity.WARNING, events.get(2).getSeverity());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailingRule() {
+        buildModel("a", "1");
+        final List<ValidationError> events = new RuleEngine(new ValidationRule() {
+            @Override
+            public void validate(final RuleContext context) {
+                throw new IllegalArgumentException("broken");
+            }
+        }).validate(this.configuration, null);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(Severity.FATAL, events.get(0).getSeverity());
+        Assert.assertEquals(Location.UNKNOWN, events.get(0).getLocation().getLineNumber());
+    }
+
+    @Test
+    public void testAnyElementIsLeaf() throws ParserConfigurationException {
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        final Element element = document.createElementNS("http://example.org/xmlns/other", "other");
+        document.appendChild(element);
+        final Extension extension = new Extension();
+        extension.setName("extension");
+        extension.setContent(Collections.singletonList(element));
+        final ObjectGraphIndex index = new ObjectGraphIndex(extension);
+        Assert.assertEquals(1, index.getObjects(Object.class).size());
+        Assert.assertSame(extension, index.getObjects(Object.class).get(0));
+    }
+
+    @Test
+    public void testUnboundGetterNotCalled() {
+        // getContentSize() would throw as there is no content
+        final Extension extension = new Extension();
+        extension.setName("extension");
+        final List<ValidationError> events = new RuleEngine(
+                new UniqueKeyRule<Property>(Property.class, KEY)).validate(extension, null);
+        Assert.assertEquals(0, events.size());
+    }
+
+    @Test
+    public void testFieldAccess() {
+        // getFirst() would throw as there are no properties
+        final Group group = new Group();
+        group.setName("group");
+        group.setProperties(new ArrayList<Property>());
+        Assert.assertEquals(1, new ObjectGraphIndex(group).getObjects(Object.class).size());
+        
+        final Property property = new Property();
+        property.setKey("a");
+        group.getProperties().add(property);
+        group.getProperties().add(property);
+        final ObjectGraphIndex index = new ObjectGraphIndex(group);
+        Assert.assertEquals(1, index.getObjects(Property.class).size());
+        Assert.assertEquals(2, index.getObjects(Object.class).size());
+    }
+
+    @Test
+    public void testOwnedPoolReused() {
+        buildModel("a", "x", "a", "y");
+        final RuleEngine engine = new RuleEngine(
+                new ReferenceRule<Property, Property>(Property.class, VALUE, Property.class, KEY),
+                new UniqueKeyRule<Property>(Property.class, KEY));
+        try {
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals(3, engine.validate(this.configuration, this.locations).size());
+            }
+            engine.shutdown();
+            Assert.assertEquals(3, engine.validate(this.configuration, this.locations).size());
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.johnstonscode.samples.jaxb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import junit.framework.Assert;
+
+import org.johnstonscode.samples.jaxb.model.Configuration;
+import org.johnstonscode.samples.jaxb.model.Property;
+import org.junit.Test;
+
+/**
+ * @author simonjo
+ *
+ */
+public class WeakLocationStoreTests {
+
+    @Test
+    public void testIdentityKeys() {
+        final WeakLocationStore store = new WeakLocationStore();
+        final String first = new String("key");
+        final String second = new String("key");
+        store.setLocation(first, 1, 2);
+        store.setLocation(second, 3, 4);
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(1, store.getLocation(first).getLineNumber());
+        Assert.assertEquals(3, store.getLocation(second).getLineNumber());
+        Assert.assertNull(store.getLocation("key"));
+        Assert.assertNull(store.getLocation(null));
+    }
+
+    @Test
+    public void testUnreachableObjectsRemoved() throws InterruptedException {
+        final WeakLocationStore store = new WeakLocationStore();
+        final Object kept = new Object();
+        store.setLocation(kept, 1, 1);
+        for (int i = 0; i < 1000; i++) {
+            store.setLocation(new Object(), i, 1);
+        }
+        for (int i = 0; i < 50 && store.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, store.size());
+        Assert.assertNotNull(store.getLocation(kept));
+    }
+
+    @Test
+    public void testParserUsesStore() throws ParserConfigurationException, IOException {
+        final WeakLocationStore store = new WeakLocationStore();
+        final ReportingParser<Configuration> parser = new ReportingParser<Configuration>();
+        parser.setLocationStore(store);
+        final Configuration root = parser.parse(new ByteArrayInputStream((
+                "<Configuration xmlns=\"http://example.org/xmlns/configuration\">\n" +
+                "  <property key=\"name\" value=\"a value\"/>\n" +
+                "</Configuration>").getBytes()), Configuration.class);
+        Assert.assertNotNull(root);
+        Assert.assertTrue(parser.getLocationMap().isEmpty());
+        Assert.assertEquals(1, parser.getLocation(root).getLineNumber());
+        for (final Property property : root.getProperties()) {
+            Assert.assertEquals(2, store.getLocation(property).getLineNumber());
+        }
+    }
+}
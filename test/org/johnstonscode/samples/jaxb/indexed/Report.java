@@ -0,0 +1,23 @@
+package org.johnstonscode.samples.jaxb.indexed;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @author simonjo
+ *
+ */
+@XmlRootElement(name="Report", namespace="http://example.org/xmlns/indexed")
+public class Report {
+
+    private String title;
+    
+    @XmlAttribute(required=true)
+    public String getTitle() {
+        return this.title;
+    }
+    
+    public void setTitle(String title) {
+        this.title = title;
+    }
+}
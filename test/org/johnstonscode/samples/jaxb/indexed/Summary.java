@@ -0,0 +1,23 @@
+package org.johnstonscode.samples.jaxb.indexed;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @author simonjo
+ *
+ */
+@XmlRootElement(name="Summary", namespace="http://example.org/xmlns/indexed")
+public class Summary {
+
+    private int count;
+    
+    @XmlAttribute(required=true)
+    public int getCount() {
+        return this.count;
+    }
+    
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
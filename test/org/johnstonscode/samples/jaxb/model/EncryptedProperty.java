@@ -0,0 +1,22 @@
+package org.johnstonscode.samples.jaxb.model;
+
+import javax.xml.bind.annotation.XmlAttribute;
+
+/**
+ * @author simonjo
+ *
+ */
+public class EncryptedProperty extends Property {
+
+    private String algorithm;
+    
+    @XmlAttribute(required=true)
+    public String getAlgorithm() {
+        return this.algorithm;
+    }
+    
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+    
+}
@@ -0,0 +1,42 @@
+package org.johnstonscode.samples.jaxb.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAnyElement;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.w3c.dom.Element;
+
+/**
+ * @author simonjo
+ *
+ */
+@XmlRootElement(name="Extension", namespace="http://example.org/xmlns/configuration")
+public class Extension {
+
+    private String name;
+    private List<Element> content;
+    
+    @XmlAttribute(required=true)
+    public String getName() {
+        return this.name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    @XmlAnyElement
+    public List<Element> getContent() {
+        return this.content;
+    }
+    
+    public void setContent(List<Element> content) {
+        this.content = content;
+    }
+    
+    public int getContentSize() {
+        return this.content.size();
+    }
+}
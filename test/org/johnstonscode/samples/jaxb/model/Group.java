@@ -0,0 +1,44 @@
+package org.johnstonscode.samples.jaxb.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @author simonjo
+ *
+ */
+@XmlRootElement(name="Group", namespace="http://example.org/xmlns/configuration")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class Group {
+
+    @XmlAttribute(required=true)
+    private String name;
+    
+    @XmlElement(name="property", namespace="http://example.org/xmlns/configuration")
+    private List<Property> properties;
+    
+    public String getName() {
+        return this.name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public List<Property> getProperties() {
+        return this.properties;
+    }
+    
+    public void setProperties(List<Property> properties) {
+        this.properties = properties;
+    }
+    
+    public Property getFirst() {
+        return this.properties.get(0);
+    }
+}